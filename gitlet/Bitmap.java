@@ -0,0 +1,321 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/** A compressed set of non-negative ints in the style of Roaring bitmaps.
+ *  Members are grouped into chunks by their high 16 bits, and each chunk
+ *  is kept in whichever container is smaller for it: a sorted array of
+ *  the low 16 bits while it has at most ARRAY_MAX members, or a bitmap of
+ *  2^16 bits once it has more.  Sparse sets thus cost two bytes a member
+ *  and dense ones one bit, and unions and differences work a chunk at a
+ *  time.  Bitmaps are not modified once shared: or() and andNot() return
+ *  new bitmaps. */
+class Bitmap {
+
+    /** Largest number of members of an array container. */
+    private static final int ARRAY_MAX = 4096;
+    /** Number of 64-bit words in a bitmap container. */
+    private static final int WORDS = 1 << 10;
+    /** Type byte of an array container in the serialized form. */
+    private static final int ARRAY = 0;
+    /** Type byte of a bitmap container in the serialized form. */
+    private static final int BITS = 1;
+
+    /** An empty bitmap. */
+    Bitmap() {
+        this(new int[4], new Container[4], 0);
+    }
+
+    /** A bitmap whose first SIZE chunks have high bits KEYS, in
+     *  increasing order, and members CONTAINERS. */
+    private Bitmap(int[] keys, Container[] containers, int size) {
+        _keys = keys;
+        _containers = containers;
+        _size = size;
+    }
+
+    /** Return true iff X is a member. */
+    boolean contains(int x) {
+        int k = Arrays.binarySearch(_keys, 0, _size, x >>> 16);
+        return k >= 0 && _containers[k].contains((char) x);
+    }
+
+    /** Add X, a non-negative int, to this bitmap. */
+    void add(int x) {
+        int key = x >>> 16;
+        int k = Arrays.binarySearch(_keys, 0, _size, key);
+        if (k < 0) {
+            k = -k - 1;
+            if (_size == _keys.length) {
+                _keys = Arrays.copyOf(_keys, Math.max(4, 2 * _size));
+                _containers = Arrays.copyOf(_containers, _keys.length);
+            }
+            System.arraycopy(_keys, k, _keys, k + 1, _size - k);
+            System.arraycopy(_containers, k, _containers, k + 1, _size - k);
+            _keys[k] = key;
+            _containers[k] = new Container();
+            _size += 1;
+        }
+        _containers[k].add((char) x);
+    }
+
+    /** Return the number of members. */
+    int cardinality() {
+        int n = 0;
+        for (int k = 0; k < _size; k += 1) {
+            n += _containers[k].card;
+        }
+        return n;
+    }
+
+    /** Return a new bitmap of the members of this one or of OTHER. */
+    Bitmap or(Bitmap other) {
+        int[] keys = new int[Math.max(_size + other._size, 1)];
+        Container[] containers = new Container[keys.length];
+        int i = 0, j = 0, n = 0;
+        while (i < _size || j < other._size) {
+            int a = i < _size ? _keys[i] : Integer.MAX_VALUE;
+            int b = j < other._size ? other._keys[j] : Integer.MAX_VALUE;
+            if (a < b) {
+                containers[n] = _containers[i].copy();
+                keys[n] = a;
+                i += 1;
+            } else if (b < a) {
+                containers[n] = other._containers[j].copy();
+                keys[n] = b;
+                j += 1;
+            } else {
+                containers[n] = _containers[i].or(other._containers[j]);
+                keys[n] = a;
+                i += 1;
+                j += 1;
+            }
+            n += 1;
+        }
+        return new Bitmap(keys, containers, n);
+    }
+
+    /** Return a new bitmap of the members of this one not in OTHER. */
+    Bitmap andNot(Bitmap other) {
+        int[] keys = new int[Math.max(_size, 1)];
+        Container[] containers = new Container[keys.length];
+        int n = 0;
+        for (int i = 0; i < _size; i += 1) {
+            int j = Arrays.binarySearch(other._keys, 0, other._size,
+                                        _keys[i]);
+            Container c = j < 0 ? _containers[i].copy()
+                : _containers[i].andNot(other._containers[j]);
+            if (c.card > 0) {
+                keys[n] = _keys[i];
+                containers[n] = c;
+                n += 1;
+            }
+        }
+        return new Bitmap(keys, containers, n);
+    }
+
+    /** Call ACTION on each member in increasing order. */
+    void forEach(IntConsumer action) {
+        for (int k = 0; k < _size; k += 1) {
+            int high = _keys[k] << 16;
+            Container c = _containers[k];
+            if (c.words == null) {
+                for (int i = 0; i < c.card; i += 1) {
+                    action.accept(high | c.values[i]);
+                }
+            } else {
+                for (int w = 0; w < WORDS; w += 1) {
+                    for (long bits = c.words[w]; bits != 0;
+                         bits &= bits - 1) {
+                        action.accept(high | w << 6
+                                      | Long.numberOfTrailingZeros(bits));
+                    }
+                }
+            }
+        }
+    }
+
+    /** Write this bitmap to OUT. */
+    void write(DataOutputStream out) throws IOException {
+        int n = 0;
+        for (int k = 0; k < _size; k += 1) {
+            n += _containers[k].card > 0 ? 1 : 0;
+        }
+        out.writeInt(n);
+        for (int k = 0; k < _size; k += 1) {
+            Container c = _containers[k];
+            if (c.card == 0) {
+                continue;
+            }
+            out.writeShort(_keys[k]);
+            out.writeByte(c.words == null ? ARRAY : BITS);
+            out.writeInt(c.card);
+            if (c.words == null) {
+                for (int i = 0; i < c.card; i += 1) {
+                    out.writeShort(c.values[i]);
+                }
+            } else {
+                for (long word : c.words) {
+                    out.writeLong(word);
+                }
+            }
+        }
+    }
+
+    /** Return the bitmap written to IN by write. */
+    static Bitmap read(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        int[] keys = new int[Math.max(n, 1)];
+        Container[] containers = new Container[keys.length];
+        for (int k = 0; k < n; k += 1) {
+            keys[k] = in.readUnsignedShort();
+            int type = in.readUnsignedByte();
+            Container c = new Container();
+            c.card = in.readInt();
+            if (type == ARRAY) {
+                c.values = new char[Math.max(c.card, 4)];
+                for (int i = 0; i < c.card; i += 1) {
+                    c.values[i] = in.readChar();
+                }
+            } else {
+                c.values = null;
+                c.words = new long[WORDS];
+                for (int w = 0; w < WORDS; w += 1) {
+                    c.words[w] = in.readLong();
+                }
+            }
+            containers[k] = c;
+        }
+        return new Bitmap(keys, containers, n);
+    }
+
+    /** The members of one chunk: either a sorted array or a bitmap. */
+    private static class Container {
+        /** An empty array container. */
+        Container() {
+            values = new char[4];
+        }
+
+        /** Return true iff V is a member. */
+        boolean contains(char v) {
+            if (words != null) {
+                return (words[v >>> 6] & (1L << v)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, card, v) >= 0;
+        }
+
+        /** Add V. */
+        void add(char v) {
+            if (words != null) {
+                long bit = 1L << v;
+                if ((words[v >>> 6] & bit) == 0) {
+                    words[v >>> 6] |= bit;
+                    card += 1;
+                }
+                return;
+            }
+            int i = Arrays.binarySearch(values, 0, card, v);
+            if (i >= 0) {
+                return;
+            }
+            if (card == ARRAY_MAX) {
+                words = toWords();
+                values = null;
+                add(v);
+                return;
+            }
+            i = -i - 1;
+            if (card == values.length) {
+                values = Arrays.copyOf(values, 2 * card);
+            }
+            System.arraycopy(values, i, values, i + 1, card - i);
+            values[i] = v;
+            card += 1;
+        }
+
+        /** Return a copy of this container. */
+        Container copy() {
+            Container c = new Container();
+            c.card = card;
+            if (words != null) {
+                c.values = null;
+                c.words = words.clone();
+            } else {
+                c.values = Arrays.copyOf(values, Math.max(card, 4));
+            }
+            return c;
+        }
+
+        /** Return a new container of the members of this or OTHER. */
+        Container or(Container other) {
+            long[] a = toWords(), b = other.toWords();
+            for (int w = 0; w < WORDS; w += 1) {
+                a[w] |= b[w];
+            }
+            return fromWords(a);
+        }
+
+        /** Return a new container of the members of this not in OTHER. */
+        Container andNot(Container other) {
+            long[] a = toWords(), b = other.toWords();
+            for (int w = 0; w < WORDS; w += 1) {
+                a[w] &= ~b[w];
+            }
+            return fromWords(a);
+        }
+
+        /** Return a new array of the bits of the members. */
+        private long[] toWords() {
+            if (words != null) {
+                return words.clone();
+            }
+            long[] result = new long[WORDS];
+            for (int i = 0; i < card; i += 1) {
+                result[values[i] >>> 6] |= 1L << values[i];
+            }
+            return result;
+        }
+
+        /** Return a container holding the members whose bits are set in
+         *  BITS, in whichever form is smaller. */
+        private static Container fromWords(long[] bits) {
+            Container c = new Container();
+            for (long word : bits) {
+                c.card += Long.bitCount(word);
+            }
+            if (c.card > ARRAY_MAX) {
+                c.values = null;
+                c.words = bits;
+                return c;
+            }
+            c.values = new char[Math.max(c.card, 4)];
+            int i = 0;
+            for (int w = 0; w < WORDS; w += 1) {
+                for (long word = bits[w]; word != 0; word &= word - 1) {
+                    c.values[i] = (char) (w << 6
+                                          | Long.numberOfTrailingZeros(word));
+                    i += 1;
+                }
+            }
+            return c;
+        }
+
+        /** Sorted members, if an array container. */
+        private char[] values;
+        /** Member bits, if a bitmap container, else null. */
+        private long[] words;
+        /** Number of members. */
+        private int card;
+    }
+
+    /** High 16 bits of the members of each chunk, in increasing order. */
+    private int[] _keys;
+    /** The members of each chunk. */
+    private Container[] _containers;
+    /** Number of chunks. */
+    private int _size;
+}
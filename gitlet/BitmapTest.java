@@ -0,0 +1,129 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Bitmap. */
+public class BitmapTest {
+
+    /** Largest member used in the tests, spanning several chunks. */
+    private static final int RANGE = 5 << 16;
+
+    /** Return a bitmap of MEMBERS. */
+    private static Bitmap bitmap(Iterable<Integer> members) {
+        Bitmap result = new Bitmap();
+        for (int x : members) {
+            result.add(x);
+        }
+        return result;
+    }
+
+    /** Return COUNT random members below RANGE drawn from RAND, with
+     *  every member of [LO, HI) as well. */
+    private static HashSet<Integer> members(Random rand, int count,
+                                            int lo, int hi) {
+        HashSet<Integer> result = new HashSet<>();
+        for (int i = 0; i < count; i += 1) {
+            result.add(rand.nextInt(RANGE));
+        }
+        for (int x = lo; x < hi; x += 1) {
+            result.add(x);
+        }
+        return result;
+    }
+
+    /** Check that BITS holds exactly MEMBERS among 0 .. RANGE-1. */
+    private static void checkMembers(HashSet<Integer> members,
+                                     Bitmap bits) {
+        for (int x = 0; x < RANGE; x += 1) {
+            assertEquals(members.contains(x), bits.contains(x));
+        }
+    }
+
+    /** Return BITS after a round trip through write and read. */
+    private static Bitmap copy(Bitmap bits) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        bits.write(out);
+        out.close();
+        return Bitmap.read(new DataInputStream(
+            new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        Bitmap bits = new Bitmap();
+        assertFalse(bits.contains(0));
+        assertFalse(copy(bits).contains(0));
+        assertFalse(bits.or(new Bitmap()).contains(0));
+    }
+
+    @Test
+    public void testAdd() throws IOException {
+        HashSet<Integer> members = members(new Random(1), 3000,
+                                           70000, 80000);
+        Bitmap bits = bitmap(members);
+        checkMembers(members, bits);
+        checkMembers(members, copy(bits));
+        bits.add(RANGE - 1);
+        members.add(RANGE - 1);
+        checkMembers(members, bits);
+    }
+
+    @Test
+    public void testOr() throws IOException {
+        Random rand = new Random(2);
+        HashSet<Integer> a = members(rand, 2000, 0, 5000),
+            b = members(rand, 2000, 3000, 9000);
+        Bitmap bitsA = bitmap(a), bitsB = bitmap(b);
+        Bitmap union = bitsA.or(bitsB);
+        HashSet<Integer> both = new HashSet<>(a);
+        both.addAll(b);
+        checkMembers(both, union);
+        checkMembers(both, copy(union));
+        checkMembers(a, bitsA);
+        checkMembers(b, bitsB);
+        union.add(RANGE - 2);
+        assertEquals(a.contains(RANGE - 2), bitsA.contains(RANGE - 2));
+        assertEquals(b.contains(RANGE - 2), bitsB.contains(RANGE - 2));
+    }
+
+    @Test
+    public void testAndNot() throws IOException {
+        Random rand = new Random(3);
+        HashSet<Integer> a = members(rand, 3000, 0, 6000),
+            b = members(rand, 3000, 4000, 70000);
+        Bitmap bitsA = bitmap(a), bitsB = bitmap(b);
+        Bitmap diff = bitsA.andNot(bitsB);
+        HashSet<Integer> only = new HashSet<>(a);
+        only.removeAll(b);
+        checkMembers(only, diff);
+        checkMembers(only, copy(diff));
+        assertEquals(only.size(), diff.cardinality());
+        checkMembers(a, bitsA);
+        checkMembers(b, bitsB);
+        assertEquals(0, bitsA.andNot(bitsA).cardinality());
+        assertEquals(a.size(), bitsA.andNot(new Bitmap()).cardinality());
+    }
+
+    @Test
+    public void testForEach() {
+        HashSet<Integer> members = members(new Random(4), 1000, 0, 5000);
+        List<Integer> seen = new ArrayList<>();
+        bitmap(members).forEach(seen::add);
+        List<Integer> expected = new ArrayList<>(members);
+        Collections.sort(expected);
+        assertEquals(expected, seen);
+    }
+}
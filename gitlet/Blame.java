@@ -0,0 +1,241 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** The attribution of each line of a file to the commit that introduced
+ *  it, found along the first-parent history of a commit.  The walk
+ *  passes over commits that did not change the file, using the
+ *  changed-path filters to avoid reading most of them, and at each
+ *  commit that did, diffs the file against its previous version: the
+ *  lines it added that are still being tracked are attributed to that
+ *  commit, and the rest are followed into the previous version.  The
+ *  walk stops once no lines are left, or at the commit that created the
+ *  file, which gets all that remain.
+ *
+ *  A commit never changes, so the blame of a file version as of the
+ *  commit that introduced it is saved in BLAME_DIR, keyed by the commit
+ *  and blob ids, and a later walk that reaches that version takes the
+ *  attribution of its remaining lines from there and stops.  Blaming a
+ *  file again after a few commits thus diffs only the new versions. */
+class Blame {
+
+    /** Directory holding the saved blames. */
+    static final File BLAME_DIR = join(Command.GITLET, "blame");
+
+    /** The blame of file PATH as of commit COMMIT, which must have the
+     *  file as text. */
+    Blame(String commit, String path) {
+        _path = path;
+        _graph = CommitGraph.get();
+        _filters = ChangedPaths.get();
+        int pos = _graph.position(commit);
+        String blob = blob(pos), blamed = blob;
+        if (blob == null) {
+            throw error("File does not exist in that commit.");
+        }
+        if (!Contents.isTextBlob(blob)) {
+            throw error("Cannot blame binary file %s.", path);
+        }
+        _lines = lines(blob);
+        _commits = new String[_lines.size()];
+        int[] tracked = new int[_lines.size()];
+        for (int i = 0; i < tracked.length; i += 1) {
+            tracked[i] = i;
+        }
+        List<String> lines = _lines;
+        String first = null;
+        int left = tracked.length;
+        while (left > 0) {
+            int parent = _graph.parentOne(pos);
+            String parentBlob = null;
+            while (parent != CommitGraph.NONE) {
+                if (_filters.mayChange(pos, path)) {
+                    parentBlob = blob(parent);
+                    if (!blob.equals(parentBlob)) {
+                        break;
+                    }
+                }
+                pos = parent;
+                parent = _graph.parentOne(pos);
+            }
+            String id = _graph.id(pos);
+            if (first == null) {
+                first = id;
+            }
+            String[] saved = load(id, blob);
+            if (saved != null) {
+                for (int i = 0; i < tracked.length; i += 1) {
+                    if (tracked[i] >= 0) {
+                        _commits[tracked[i]] = saved[i];
+                    }
+                }
+                break;
+            }
+            List<String> parentLines = null;
+            if (parent != CommitGraph.NONE && parentBlob != null
+                && Contents.isTextBlob(parentBlob)) {
+                parentLines = lines(parentBlob);
+            }
+            if (parentLines == null) {
+                for (int line : tracked) {
+                    if (line >= 0) {
+                        _commits[line] = id;
+                    }
+                }
+                break;
+            }
+            tracked = follow(lines, parentLines, tracked, id);
+            left = 0;
+            for (int line : tracked) {
+                left += line >= 0 ? 1 : 0;
+            }
+            pos = parent;
+            blob = parentBlob;
+            lines = parentLines;
+        }
+        if (first != null) {
+            save(first, blamed);
+        }
+    }
+
+    /** Return the lines of the file. */
+    List<String> lines() {
+        return _lines;
+    }
+
+    /** Return the id of the commit that introduced line I of the file,
+     *  numbering from 0. */
+    String commit(int i) {
+        return _commits[i];
+    }
+
+    /** Attribute the lines of LINES that are not in PARENTLINES, the
+     *  previous version of the file, to commit ID, where TRACKED[i] is
+     *  the line of the blamed file that is line i of LINES, or -1 if it
+     *  is not one.  Return the same mapping for PARENTLINES. */
+    private int[] follow(List<String> lines, List<String> parentLines,
+                         int[] tracked, String id) {
+        Diff diff = new Diff(Diff.Algorithm.configured());
+        diff.setSequences(parentLines, lines);
+        int[] edits = diff.diffs();
+        int[] result = new int[parentLines.size()];
+        Arrays.fill(result, -1);
+        int i = 0, j = 0;
+        for (int k = 0; k <= edits.length; k += 4) {
+            int end = k < edits.length ? edits[k] : result.length;
+            while (i < end) {
+                result[i] = tracked[j];
+                i += 1;
+                j += 1;
+            }
+            if (k < edits.length) {
+                for (int n = 0; n < edits[k + 3]; n += 1, j += 1) {
+                    if (tracked[j] >= 0) {
+                        _commits[tracked[j]] = id;
+                    }
+                }
+                i += edits[k + 1];
+            }
+        }
+        return result;
+    }
+
+    /** Return the blob id of the file in the commit at POS, or null if it
+     *  has none. */
+    private String blob(int pos) {
+        return Tree.lookup(
+            Commit.getCommitHeader(_graph.id(pos)).getTree(), _path);
+    }
+
+    /** Return the lines of blob ID. */
+    private static List<String> lines(String id) {
+        return Diff.lines(ObjectStore.read(ObjectStore.Kind.BLOB, id));
+    }
+
+    /** Return the file holding the saved blame of blob BLOB as of commit
+     *  COMMIT. */
+    private static File file(String commit, String blob) {
+        return join(BLAME_DIR, sha1(commit, blob));
+    }
+
+    /** Return the saved blame of blob BLOB as of COMMIT, the commit that
+     *  introduced it, or null if there is none. */
+    private static String[] load(String commit, String blob) {
+        File file = file(commit, blob);
+        if (!file.isFile()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(
+            new ByteArrayInputStream(readContents(file)));
+        try {
+            String[] ids = new String[in.readInt()];
+            byte[] raw = new byte[ObjectStore.ID_BYTES];
+            for (int i = 0; i < ids.length; i += 1) {
+                in.readFully(raw);
+                ids[i] = ObjectStore.fromRawId(raw, 0);
+            }
+            String[] result = new String[in.readInt()];
+            for (int i = 0; i < result.length; i += 1) {
+                result[i] = ids[in.readInt()];
+            }
+            return result;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Save the blame of the file, which is blob BLOB as of COMMIT, the
+     *  commit that introduced it. */
+    private void save(String commit, String blob) {
+        File file = file(commit, blob);
+        if (file.isFile()) {
+            return;
+        }
+        HashMap<String, Integer> numbers = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        for (String id : _commits) {
+            if (numbers.putIfAbsent(id, ids.size()) == null) {
+                ids.add(id);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(ids.size());
+            for (String id : ids) {
+                out.write(ObjectStore.toRawId(id));
+            }
+            out.writeInt(_commits.length);
+            for (String id : _commits) {
+                out.writeInt(numbers.get(id));
+            }
+            out.close();
+        } catch (IOException excp) {
+            throw error("Internal error saving blame.");
+        }
+        BLAME_DIR.mkdir();
+        writeContents(file, bytes.toByteArray());
+    }
+
+    /** The name of the file blamed. */
+    private final String _path;
+    /** The lines of the file. */
+    private final List<String> _lines;
+    /** The commit introducing each line of the file. */
+    private final String[] _commits;
+    /** The commit graph. */
+    private final CommitGraph _graph;
+    /** The changed-path filters. */
+    private final ChangedPaths _filters;
+}
@@ -0,0 +1,234 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** Changed-path Bloom filters, as in Git's commit-graph.  Each commit
+ *  has a filter of the names of the files whose blob ids differ between
+ *  its tree and its first parent's, so that a walk looking for the
+ *  commits that changed a file can pass over most of the others without
+ *  reading them: a filter may claim a file that did not change, but
+ *  never misses one that did.  A filter has BITS_PER_PATH bits for each
+ *  changed file and HASHES hash functions; a commit changing more than
+ *  MAX_PATHS files gets no filter, and is always read.  The filters are
+ *  stored in commit-graph order, each as its length in 64-bit words
+ *  (NO_FILTER if it has none) followed by the words.  Like the commit
+ *  graph, the file only grows at the end, and the count in its header is
+ *  bumped after the records are written.  Filters are added for every
+ *  new commit and, on first use, for all earlier ones. */
+class ChangedPaths {
+
+    /** File holding the filters. */
+    static final File PATHS_FILE = join(Command.GITLET, "changed-paths");
+
+    /** Magic number at the start of the filter file. */
+    private static final int MAGIC = 0x47435046;
+    /** Current filter file format version. */
+    private static final int VERSION = 1;
+    /** Length of the header: magic, version, count. */
+    private static final int HEADER_BYTES = 3 * 4;
+    /** Bits of filter per changed file. */
+    private static final int BITS_PER_PATH = 10;
+    /** Number of bits set for each changed file. */
+    private static final int HASHES = 7;
+    /** Most changed files of a commit that has a filter. */
+    private static final int MAX_PATHS = 512;
+    /** Length recorded for a commit without a filter. */
+    private static final int NO_FILTER = -1;
+
+    /** Return the filters of this repository, creating their file and
+     *  adding filters for all commits in the commit graph on first
+     *  use. */
+    static ChangedPaths get() {
+        if (_filters == null) {
+            if (!PATHS_FILE.isFile()) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(VERSION).putInt(0);
+                writeContents(PATHS_FILE, header.array());
+            }
+            _filters = new ChangedPaths();
+            _filters.update();
+        }
+        return _filters;
+    }
+
+    /** Forget the filters, so that they are reread on next use. */
+    static void close() {
+        _filters = null;
+    }
+
+    /** Add the filters of the commits just added to the commit graph, if
+     *  the filter file exists; otherwise they are included when the file
+     *  is created. */
+    static void sync() {
+        if (PATHS_FILE.isFile()) {
+            get().update();
+        }
+    }
+
+    /** Return false if the commit at commit-graph position POS certainly
+     *  did not change file PATH, relative to its first parent, and true
+     *  if it may have. */
+    boolean mayChange(int pos, String path) {
+        MappedByteBuffer map = map();
+        int offset = _offsets[pos];
+        int words = map.getInt(offset);
+        if (words == NO_FILTER) {
+            return true;
+        }
+        if (words == 0) {
+            return false;
+        }
+        long bits = (long) words * 64;
+        long hash = hash(path);
+        for (int i = 0; i < HASHES; i += 1) {
+            long bit = bit(hash, i, bits);
+            long word = map.getLong(offset + 4 + (int) (bit / 64) * 8);
+            if ((word & (1L << (bit % 64))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Append the filters of the commits in the commit graph that have
+     *  none. */
+    private void update() {
+        CommitGraph graph = CommitGraph.get();
+        int count = map().getInt(8);
+        if (count >= graph.size()) {
+            return;
+        }
+        List<long[]> filters = new ArrayList<>();
+        int bytes = 0;
+        for (int pos = count; pos < graph.size(); pos += 1) {
+            long[] filter = filter(changes(graph, pos));
+            filters.add(filter);
+            bytes += 4 + (filter == null ? 0 : filter.length * 8);
+        }
+        ByteBuffer records = ByteBuffer.allocate(bytes);
+        for (long[] filter : filters) {
+            if (filter == null) {
+                records.putInt(NO_FILTER);
+            } else {
+                records.putInt(filter.length);
+                for (long word : filter) {
+                    records.putLong(word);
+                }
+            }
+        }
+        records.flip();
+        try (RandomAccessFile f = new RandomAccessFile(PATHS_FILE, "rw")) {
+            FileChannel channel = f.getChannel();
+            long offset = _end;
+            while (records.hasRemaining()) {
+                channel.write(records, offset + records.position());
+            }
+            channel.write(ByteBuffer.allocate(4)
+                          .putInt(0, count + filters.size()), 8);
+        } catch (IOException excp) {
+            throw error("Could not write changed paths: %s",
+                        excp.getMessage());
+        }
+        _map = null;
+    }
+
+    /** Return the names of the files changed by the commit at POS in
+     *  GRAPH, relative to its first parent. */
+    private static Collection<String> changes(CommitGraph graph, int pos) {
+        String tree = Commit.getCommitHeader(graph.id(pos)).getTree();
+        int parent = graph.parentOne(pos);
+        if (parent == CommitGraph.NONE) {
+            return Tree.read(tree).keySet();
+        }
+        String parentTree =
+            Commit.getCommitHeader(graph.id(parent)).getTree();
+        List<String> result = new ArrayList<>();
+        for (Tree.Change change : Tree.diff(parentTree, tree)) {
+            result.add(change.path);
+        }
+        return result;
+    }
+
+    /** Return the filter of PATHS, or null if there are too many. */
+    private static long[] filter(Collection<String> paths) {
+        if (paths.size() > MAX_PATHS) {
+            return null;
+        }
+        long[] result = new long[(paths.size() * BITS_PER_PATH + 63) / 64];
+        long bits = (long) result.length * 64;
+        for (String path : paths) {
+            long hash = hash(path);
+            for (int i = 0; i < HASHES; i += 1) {
+                long bit = bit(hash, i, bits);
+                result[(int) (bit / 64)] |= 1L << (bit % 64);
+            }
+        }
+        return result;
+    }
+
+    /** Return the bit set by hash function I for a file with hash HASH,
+     *  in a filter of BITS bits.  As in Git, the functions are formed by
+     *  double hashing from the two halves of HASH. */
+    private static long bit(long hash, int i, long bits) {
+        long h1 = hash & 0xffffffffL, h2 = (hash >>> 32) | 1;
+        return (h1 + i * h2) % bits;
+    }
+
+    /** Return the 64-bit FNV-1a hash of the UTF-8 encoding of PATH. */
+    private static long hash(String path) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /** Return the mapping of the filter file, mapping it and finding
+     *  the offset of each filter on first use. */
+    private MappedByteBuffer map() {
+        if (_map == null) {
+            try (RandomAccessFile f = new RandomAccessFile(PATHS_FILE, "r")) {
+                FileChannel channel = f.getChannel();
+                _map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                   channel.size());
+            } catch (IOException excp) {
+                throw error("Could not read changed paths: %s",
+                            excp.getMessage());
+            }
+            if (_map.getInt(0) != MAGIC || _map.getInt(4) != VERSION) {
+                throw error("Unknown changed-paths format.");
+            }
+            int count = _map.getInt(8);
+            _offsets = new int[count];
+            int offset = HEADER_BYTES;
+            for (int pos = 0; pos < count; pos += 1) {
+                _offsets[pos] = offset;
+                int words = _map.getInt(offset);
+                offset += 4 + Math.max(words, 0) * 8;
+            }
+            _end = offset;
+        }
+        return _map;
+    }
+
+    /** The mapped filter file, or null if not yet mapped. */
+    private MappedByteBuffer _map;
+    /** The offset in the file of the filter of each commit. */
+    private int[] _offsets;
+    /** The offset in the file just past the last counted filter. */
+    private int _end;
+
+    /** The filters of this repository, or null if not yet opened. */
+    private static ChangedPaths _filters;
+}
@@ -0,0 +1,120 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** The encodings in which stored objects may be compressed.  Each
+ *  encoding is identified by the suffix of the name of a loose object file
+ *  and by a code recorded with each object in a pack, so that objects
+ *  written under any setting of core.compression remain readable.  All
+ *  codecs work on streams, so objects are never held whole in memory. */
+enum Codec {
+    /** Uncompressed contents, as in repositories from before codecs. */
+    NONE(0, "txt"),
+    /** zlib Deflate, from java.util.zip. */
+    DEFLATE(1, "z"),
+    /** The block-based LZ77 coding of LzOutputStream, which trades some
+     *  compression for much faster encoding and decoding. */
+    LZ(2, "lz");
+
+    /** The configuration key selecting the codec for new objects. */
+    static final String CONFIG_KEY = "core.compression";
+
+    /** A codec whose pack code is CODE and whose loose files end in
+     *  .SUFFIX. */
+    Codec(int code, String suffix) {
+        _code = code;
+        _suffix = suffix;
+    }
+
+    /** Return the code identifying this codec in packs. */
+    int code() {
+        return _code;
+    }
+
+    /** Return the file name suffix, without its dot, of loose objects in
+     *  this codec. */
+    String suffix() {
+        return _suffix;
+    }
+
+    /** Return a stream that writes the encoding of the bytes written to it
+     *  to OUT. */
+    OutputStream encoder(OutputStream out) {
+        switch (this) {
+        case DEFLATE:
+            return new DeflaterOutputStream(out,
+                    new Deflater(Deflater.DEFAULT_COMPRESSION), 1 << 13) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    def.end();
+                }
+            };
+        case LZ:
+            return new LzOutputStream(out);
+        default:
+            return out;
+        }
+    }
+
+    /** Return a stream of the bytes encoded in IN. */
+    InputStream decoder(InputStream in) {
+        switch (this) {
+        case DEFLATE:
+            return new InflaterInputStream(in, new Inflater(), 1 << 13) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inf.end();
+                }
+            };
+        case LZ:
+            return new LzInputStream(in);
+        default:
+            return in;
+        }
+    }
+
+    /** Return the codec with pack code CODE. */
+    static Codec fromCode(int code) {
+        for (Codec codec : values()) {
+            if (codec._code == code) {
+                return codec;
+            }
+        }
+        throw Utils.error("Unknown object encoding: %d", code);
+    }
+
+    /** Return the codec named NAME, ignoring case, or null if there is
+     *  none. */
+    static Codec forName(String name) {
+        for (Codec codec : values()) {
+            if (codec.name().equalsIgnoreCase(name.trim())) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /** Return the codec selected for new objects in this repository by
+     *  core.compression (none, deflate or lz; deflate by default). */
+    static Codec configured() {
+        String name = Config.get(CONFIG_KEY, "deflate");
+        Codec codec = forName(name);
+        if (codec == null) {
+            throw Utils.error("Unknown %s: %s", CONFIG_KEY, name);
+        }
+        return codec;
+    }
+
+    /** Code in packs. */
+    private final int _code;
+    /** Loose file suffix. */
+    private final String _suffix;
+}
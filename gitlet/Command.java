@@ -1,15 +1,27 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Set;
-import java.util.Stack;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.ArrayDeque;
 import java.util.List;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 import static gitlet.Utils.*;
@@ -23,6 +35,10 @@ public class Command {
      * staging area.
      */
     private Stage stage;
+    /**
+     * cached hashes of working files, or null if not yet loaded.
+     */
+    private FileIndex fileIndex;
 
     /**
      * current working directory.
@@ -40,6 +56,14 @@ public class Command {
      * create blobs directory.
      */
     public static final File BLOBS_DIR = join(GITLET, "blobs");
+    /**
+     * create trees directory.
+     */
+    public static final File TREES_DIR = join(GITLET, "trees");
+    /**
+     * create deltas directory.
+     */
+    public static final File DELTAS_DIR = join(GITLET, "deltas");
     /**
      * create branches directory.
      */
@@ -50,9 +74,8 @@ public class Command {
     public static final File STAGE_DIR = join(GITLET, "stage");
 
     public Command() {
-        File stageFile = join(STAGE_DIR, "stage.txt");
-        if (stageFile.exists()) {
-            stage = readObject(stageFile, Stage.class);
+        if (Stage.STAGE_FILE.exists()) {
+            stage = Stage.load();
         }
         File headFile = join(GITLET, "heads.txt");
         if (headFile.exists()) {
@@ -70,6 +93,19 @@ public class Command {
         return stage;
     }
 
+    public FileIndex fileIndex() {
+        if (fileIndex == null) {
+            fileIndex = FileIndex.load();
+        }
+        return fileIndex;
+    }
+
+    public void saveFileIndex() {
+        if (fileIndex != null) {
+            fileIndex.save();
+        }
+    }
+
     public void init() {
         if (GITLET.exists()) {
             message("A Gitlet version-control system "
@@ -79,16 +115,17 @@ public class Command {
             GITLET.mkdir();
             COMMITS_DIR.mkdir();
             BLOBS_DIR.mkdir();
+            TREES_DIR.mkdir();
             BRANCHES_DIR.mkdir();
             STAGE_DIR.mkdir();
             stage = new Stage();
             Commit initialCommit = new Commit("initial commit",
-                    null, null, new HashMap<>());
+                    null, null, Tree.write(new HashMap<>()));
             initialCommit.save();
             saveContentsToFile(BRANCHES_DIR, "master.txt",
                     initialCommit.getSelfSha1());
             saveContentsToFile(GITLET, "heads.txt", head);
-            saveObjectToFile(STAGE_DIR, "stage.txt", stage);
+            stage.save();
         }
     }
 
@@ -98,38 +135,48 @@ public class Command {
         writeContents(file, obj);
     }
 
-    public void saveObjectToFile(File fileName,
-                                 String other, Serializable obj) {
-        File file = join(fileName, other);
-        writeObject(file, obj);
+    public void add(String fileName) throws IOException {
+        addAll(Collections.singletonList(fileName));
     }
 
-    public void add(String fileName) throws IOException {
-        if (!checkFileExist(fileName)) {
-            message("File does not exist.");
+    public void addAll(List<String> fileNames) throws IOException {
+        for (String fileName : fileNames) {
+            if (!checkFileExist(fileName)) {
+                message("File does not exist.");
+                return;
+            }
+        }
+        Commit commit = getCommit();
+        if (commit == null) {
             return;
-        } else {
-            if (getCommit() != null) {
-                File newFile = currentFile(fileName);
-                String sha1 = sha1(readContents(newFile));
-                String commitSha1 = getCommit().getBlobHashKey(fileName);
-                if (sha1.equals(commitSha1)) {
-                    if (stage.getDelete().containsKey(fileName)) {
-                        stage.removeFromDelete(fileName);
-                        writeObject(join(STAGE_DIR, "stage.txt"), stage);
-                    }
-                    return;
-                } else {
-                    if (stage.getDelete().containsKey(fileName)) {
-                        stage.removeFromDelete(fileName);
-                    }
-                    stage.add(fileName, sha1);
-                    createBlob(sha1, readContents(newFile));
-                    writeObject(join(STAGE_DIR, "stage.txt"), stage);
+        }
+        Set<String> created = ConcurrentHashMap.newKeySet();
+        TreeMap<String, String> hashes = fileIndex().hashAll(fileNames,
+                file -> ObjectStore.insert(ObjectStore.Kind.BLOB, file,
+                        created));
+        for (String fileName : fileNames) {
+            String sha1 = hashes.get(fileName);
+            String commitSha1 = commit.getBlobHashKey(fileName);
+            if (sha1.equals(commitSha1)) {
+                if (stage.getDelete().containsKey(fileName)) {
+                    stage.removeFromDelete(fileName);
+                }
+            } else {
+                if (stage.getDelete().containsKey(fileName)) {
+                    stage.removeFromDelete(fileName);
+                }
+                stage.add(fileName, sha1);
+                if (!ObjectStore.contains(ObjectStore.Kind.BLOB, sha1)) {
+                    ObjectStore.insert(ObjectStore.Kind.BLOB,
+                            currentFile(fileName), created);
+                }
+                if (created.contains(sha1)) {
+                    ObjectStore.deltify(sha1, commitSha1,
+                            currentFile(fileName).length());
                 }
             }
-
         }
+        stage.save();
     }
 
     public void commit(String message, String parent2) {
@@ -144,21 +191,15 @@ public class Command {
         Commit commit = getCommit();
         HashMap<String, String> addedBlobs = stage.getAdd();
         Set<String> deletedSet = stage.getDeletedSet();
-        HashMap<String, String> copyBlobs =
-                new HashMap<>(commit.getBlobHash());
-        copyBlobs.putAll(addedBlobs);
-        for (String deletedBlob : deletedSet) {
-            if (copyBlobs.containsKey(deletedBlob)) {
-                copyBlobs.remove(deletedBlob);
-            }
-        }
+        String tree = Tree.update(commit.getTree(), addedBlobs, deletedSet);
         String parentSha1 = commit.getSelfSha1();
-        Commit newCommit = new Commit(message, parentSha1, parent2, copyBlobs);
+        Commit newCommit = new Commit(message, parentSha1, parent2, tree);
         newCommit.save();
         String sha1 = newCommit.getSelfSha1();
         saveContentsToFile(BRANCHES_DIR, String.format("%s.txt", head), sha1);
         stage.clear();
-        writeObject(join(STAGE_DIR, "stage.txt"), stage);
+        stage.save();
+        Reachability.get().update();
     }
 
     public boolean checkFileExist(String fileName) {
@@ -166,29 +207,74 @@ public class Command {
         return file.exists();
     }
 
-    public void createBlob(String sha1, byte[] contents) throws IOException {
-        File file = join(BLOBS_DIR, sha1 + ".txt");
-        writeContents(file, contents);
-    }
-
     public Commit getCommit() {
         File file = join(BRANCHES_DIR, head + ".txt");
         String sha1 = readContentsAsString(file);
-        File fileCommit = join(COMMITS_DIR, sha1 + ".txt");
-        return readObject(fileCommit, Commit.class);
+        return Commit.getCommit(sha1);
     }
 
     public void log() {
-        Commit commit = getCommit();
-        while (commit != null) {
-            printCommit(commit);
-            String parentSha1 = commit.getParentOne();
-            if (parentSha1 == null) {
-                break;
+        CommitGraph graph = CommitGraph.get();
+        int pos = graph.position(readContentsAsString(
+                join(BRANCHES_DIR, head + ".txt")));
+        LogPrinter out = new LogPrinter();
+        while (pos != CommitGraph.NONE
+                && out.print(Commit.getCommitHeader(graph.id(pos)))) {
+            pos = graph.parentOne(pos);
+        }
+        out.flush();
+    }
+
+    /* print, as log does, the commits in the history of the current
+       branch that changed file path relative to their first parent.  the
+       changed-path filters rule out most other commits, so only the
+       commits whose filters admit path are read and checked. */
+    public void log(String path) {
+        CommitGraph graph = CommitGraph.get();
+        ChangedPaths filters = ChangedPaths.get();
+        int pos = graph.position(readContentsAsString(
+                join(BRANCHES_DIR, head + ".txt")));
+        LogPrinter out = new LogPrinter();
+        while (pos != CommitGraph.NONE) {
+            int parent = graph.parentOne(pos);
+            if (filters.mayChange(pos, path)) {
+                Commit c = Commit.getCommitHeader(graph.id(pos));
+                String before = parent == CommitGraph.NONE ? null
+                        : Tree.lookup(Commit.getCommitHeader(
+                                graph.id(parent)).getTree(), path);
+                String after = Tree.lookup(c.getTree(), path);
+                if (!Objects.equals(before, after) && !out.print(c)) {
+                    break;
+                }
             }
-            File file = join(COMMITS_DIR, parentSha1 + ".txt");
-            commit = readObject(file, Commit.class);
+            pos = parent;
+        }
+        out.flush();
+    }
 
+    /* print each line of file fileName in the current commit, after the
+       abbreviated id and date of the commit that introduced it and the
+       line number. */
+    public void blame(String fileName) {
+        Blame blame = new Blame(getCommit().getSelfSha1(), fileName);
+        List<String> lines = blame.lines();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        HashMap<String, String> dates = new HashMap<>();
+        int width = String.valueOf(lines.size()).length();
+        try {
+            Writer out = new BufferedWriter(
+                    new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+                    1 << 16);
+            for (int i = 0; i < lines.size(); i += 1) {
+                String id = blame.commit(i);
+                String date = dates.computeIfAbsent(id, k -> format.format(
+                        new Date(Commit.getCommitHeader(k).getTime())));
+                out.write(String.format("%s (%s %" + width + "d) %s%n",
+                        id.substring(0, 8), date, i + 1, lines.get(i)));
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw error("Could not write blame: %s", excp.getMessage());
         }
     }
 
@@ -199,32 +285,24 @@ public class Command {
         overWrite(fileName, sha1);
     }
 
+    public String resolveCommitId(String id) {
+        List<String> found = Commit.findIds(id);
+        if (found.isEmpty()) {
+            message("No commit with that id exists.");
+            return null;
+        } else if (found.size() > 1) {
+            message("Ambiguous commit id.");
+            return null;
+        }
+        return found.get(0);
+    }
+
     public void checkoutCommitFile(String id, String fileName) {
-        File commitFile = join(COMMITS_DIR, id + ".txt");
-        boolean shortenedFound = false;
-        if (!commitFile.exists()) {
-            for (String commitID : plainFilenamesIn(join(COMMITS_DIR))) {
-                for (int i = 0; i < id.length(); i++) {
-                    Character c = id.charAt(i);
-                    if (!((Character) commitID.charAt(i)).equals(c)) {
-                        break;
-                    }
-                    if (i == id.length() - 1) {
-                        commitFile = join(COMMITS_DIR, commitID);
-                        shortenedFound = true;
-                        break;
-                    }
-                }
-                if (shortenedFound) {
-                    break;
-                }
-            }
-            if (!shortenedFound) {
-                message("No commit with that id exists.");
-                return;
-            }
+        String commitID = resolveCommitId(id);
+        if (commitID == null) {
+            return;
         }
-        Commit commit = readObject(commitFile, Commit.class);
+        Commit commit = Commit.getCommit(commitID);
         String sha1 = commit.getBlobHashKey(fileName);
         fileExistCommit(commit, fileName);
         if (sha1 != null) {
@@ -245,34 +323,35 @@ public class Command {
         }
         String hash = readContentsAsString(join(BRANCHES_DIR,
                 name + ".txt"));
-        Commit branchCommit =
-                readObject(join(COMMITS_DIR, hash + ".txt"), Commit.class);
-        Commit currentCommit = getCommit();
-        HashMap<String, String>
-                branchCommitBlob = branchCommit.getBlobHash();
-        List<String> list = plainFilenamesIn(CWD);
-        if (checkUntracked(list,
-                currentCommit.getBlobHash(), branchCommitBlob)) {
+        Commit branchCommit = Commit.getCommit(hash);
+        if (!checkoutTree(getCommit(), branchCommit)) {
             return;
         }
-        for (String fileName : list) {
-            if (!branchCommitBlob.containsKey(fileName)
-                    && currentCommit.getBlobHash().containsKey(fileName)) {
-                restrictedDelete(fileName);
-            }
-        }
-        for (String fileName : branchCommit.getBlobHash().keySet()) {
-            String sha1 = branchCommit.getBlobHashKey(fileName);
-            if (sha1 != null) {
-                overWrite(fileName, sha1);
-            }
-        }
         stage.clear();
-        saveObjectToFile(STAGE_DIR, "stage.txt", stage);
+        stage.save();
         saveContentsToFile(GITLET, "heads.txt", name);
+        head = name;
 
     }
 
+    public boolean checkoutTree(Commit currentCommit, Commit target) {
+        List<Tree.Change> changes =
+                Tree.diff(currentCommit.getTree(), target.getTree());
+        if (checkUntracked(FileIndex.workingFiles(), changes)) {
+            return false;
+        }
+        for (Tree.Change change : changes) {
+            if (change.after == null) {
+                if (currentFile(change.path).exists()) {
+                    restrictedDelete(currentFile(change.path));
+                }
+            } else {
+                overWrite(change.path, change.after);
+            }
+        }
+        return true;
+    }
+
     public File currentFile(String fileName) {
         return join(CWD, fileName);
     }
@@ -282,8 +361,9 @@ public class Command {
         if (currentFile.exists()) {
             restrictedDelete(currentFile);
         }
-        File blob = join(BLOBS_DIR, sha1 + ".txt");
-        writeContents(currentFile(fileName), readContents(blob));
+        ObjectStore.copyTo(ObjectStore.Kind.BLOB, sha1,
+                currentFile(fileName));
+        fileIndex().record(fileName, sha1);
     }
 
     public void fileExistCommit(Commit commit, String fileName) {
@@ -294,33 +374,34 @@ public class Command {
         }
     }
 
-    public void printCommit(Commit c) {
-        message("===");
-        message(String.format("commit %s", c.getSelfSha1()));
-        message(String.format("Date: %s", c.getTimestamp()));
-        message(c.getMessage());
-        message("");
-    }
-
-    public void globalLog() {
-        List<String> list = plainFilenamesIn(COMMITS_DIR);
-        for (String fileName : list) {
-            Commit c = readObject(join(COMMITS_DIR, fileName), Commit.class);
-            printCommit(c);
+    /* print the commits made from since to until, in milliseconds since
+       the epoch, newest first, stopping after limit of them if limit is
+       not negative, or once the output is closed.  The commits are taken
+       in time order from the commit graph, so only those printed are
+       read. */
+    public void globalLog(int limit, long since, long until) {
+        CommitGraph graph = CommitGraph.get();
+        PrimitiveIterator.OfInt order = graph.byTime(until);
+        LogPrinter out = new LogPrinter();
+        for (int n = 0; order.hasNext() && n != limit; n += 1) {
+            int pos = order.nextInt();
+            if (graph.time(pos) < since
+                    || !out.print(Commit.getCommitHeader(graph.id(pos)))) {
+                break;
+            }
         }
+        out.flush();
     }
 
-    public void find(String message) {
-        boolean found = false;
-        List<String> list = plainFilenamesIn(COMMITS_DIR);
-        for (String fileName : list) {
-            Commit c = readObject(join(COMMITS_DIR, fileName), Commit.class);
-            if (c.getMessage().equals(message)) {
-                message(c.getSelfSha1());
-                found = true;
-            }
+    /* print the ids of the commits whose message is message, or, if
+       grep, contains all of its words. */
+    public void find(String message, boolean grep) {
+        MessageIndex index = MessageIndex.get();
+        List<String> ids = grep ? index.grep(message) : index.find(message);
+        for (String id : ids) {
+            message(id);
         }
-        if (!found) {
+        if (ids.isEmpty()) {
             message("Found no commit with that message.");
         }
     }
@@ -334,45 +415,28 @@ public class Command {
             addHash.remove(fileName);
         } else if (blobHash.containsKey(fileName)) {
             deleteHash.put(fileName, blobHash.get(fileName));
-            blobHash.remove(fileName);
             if (currentFile(fileName).exists()) {
                 restrictedDelete(fileName);
             }
         } else {
             message("No reason to remove the file.");
         }
-        saveObjectToFile(STAGE_DIR, "stage.txt", stage);
+        stage.save();
     }
 
-    public void reset(String id) {
-        File commitFile = join(COMMITS_DIR, id + ".txt");
-        if (!commitFile.exists()) {
-            message("No commit with that id exists.");
+    public void reset(String shortId) {
+        String id = resolveCommitId(shortId);
+        if (id == null) {
             return;
         }
-        Commit currentCommit = getCommit();
-        Commit commit = readObject(commitFile, Commit.class);
-        HashMap<String, String> commitBlob = commit.getBlobHash();
-        List<String> list = plainFilenamesIn(CWD);
-        if (checkUntracked(list, currentCommit.getBlobHash(), commitBlob)) {
+        if (!checkoutTree(getCommit(), Commit.getCommit(id))) {
             return;
         }
-        for (String fileName : list) {
-            if (!commitBlob.containsKey(fileName)
-                    && currentCommit.getBlobHash().containsKey(fileName)) {
-                restrictedDelete(currentFile(fileName));
-            }
-        }
-        for (String fileName : list) {
-            String sha1 = commitBlob.get(fileName);
-            if (sha1 != null) {
-                overWrite(fileName, sha1);
-            }
-        }
         stage.clear();
-        saveObjectToFile(STAGE_DIR, "stage.txt", stage);
+        stage.save();
         saveContentsToFile(BRANCHES_DIR, head + ".txt",
                 id);
+        Reachability.get().update();
 
     }
 
@@ -383,6 +447,7 @@ public class Command {
         }
         Commit commit = getCommit();
         saveContentsToFile(BRANCHES_DIR, name + ".txt", commit.getSelfSha1());
+        Reachability.get().update();
     }
 
     public void rmBranch(String name) {
@@ -396,6 +461,7 @@ public class Command {
         }
         File file = join(BRANCHES_DIR, name + ".txt");
         file.delete();
+        Reachability.get().update();
     }
 
     public void status() {
@@ -424,10 +490,17 @@ public class Command {
         }
         message("");
         message("=== Modifications Not Staged For Commit ===");
-        for (String file : plainFilenamesIn(CWD)) {
-            File currentFile = currentFile(file);
-            String hash = sha1(readContentsAsString(currentFile));
+        List<String> files = FileIndex.workingFiles();
+        List<String> tracked = new ArrayList<>();
+        for (String file : files) {
             if (commit.getBlobHash().containsKey(file)) {
+                tracked.add(file);
+            }
+        }
+        TreeMap<String, String> hashes = fileIndex().hashAll(tracked);
+        for (String file : files) {
+            if (commit.getBlobHash().containsKey(file)) {
+                String hash = hashes.get(file);
                 if (!stage.getAdd().containsKey(file)
                         && !commit.getBlobHash().get(file).equals(hash)) {
                     message(file + "(modified)");
@@ -448,7 +521,7 @@ public class Command {
 
         message("");
         message("=== Untracked Files ===");
-        for (String s : plainFilenamesIn(CWD)) {
+        for (String s : files) {
             if (!stage.getAdd().containsKey(s)) {
                 if (!commit.getBlobHash().containsKey(s)) {
                     message(s);
@@ -459,6 +532,52 @@ public class Command {
         message("");
     }
 
+    public void config(String key, String value) {
+        if (value == null) {
+            String current = Config.get(key, null);
+            if (current != null) {
+                message("%s", current);
+            }
+        } else if (key.equals(Codec.CONFIG_KEY)
+                && Codec.forName(value) == null) {
+            message("Unknown compression: %s", value);
+        } else if (key.equals(Diff.ALGORITHM)
+                && Diff.Algorithm.forName(value) == null) {
+            message("Unknown diff algorithm: %s", value);
+        } else if (key.equals(ObjectStore.DELTA_DEPTH)
+                && !isIntBetween(value, 0, Delta.MAX_DEPTH)) {
+            message("Delta depth must be between 0 and %d.",
+                    Delta.MAX_DEPTH);
+        } else {
+            Config.set(key, value);
+        }
+    }
+
+    /* return true iff value is an integer from lo to hi. */
+    private static boolean isIntBetween(String value, int lo, int hi) {
+        try {
+            int n = Integer.parseInt(value.trim());
+            return n >= lo && n <= hi;
+        } catch (NumberFormatException excp) {
+            return false;
+        }
+    }
+
+    public void repack() {
+        ObjectStore.repack();
+    }
+
+    /* delete the objects unreachable from the branches and the stage,
+       and report the space freed. */
+    public void gc() {
+        message("Reclaimed %d bytes.", GarbageCollector.collect(stage));
+    }
+
+    public void migrate() {
+        Migration.migrate();
+        stage = Stage.load();
+    }
+
     public boolean mergePrecondition(String branch) {
         boolean result = false;
         if (!stage.checkStage()) {
@@ -474,18 +593,63 @@ public class Command {
         return result;
     }
 
-    public void mergeConflict(String currentBlobHash,
-                              String branchBlobHash, String fileName) {
-        String headContents = currentBlobHash != null
-                ? readContentsAsString(join(BLOBS_DIR,
-                currentBlobHash + ".txt")) : "";
-        String branchContents = branchBlobHash != null
-                ? readContentsAsString(join(BLOBS_DIR,
-                branchBlobHash + ".txt")) : "";
-        String contents = "<<<<<<< HEAD\n";
-        contents = contents + headContents
-                + "=======\n" + branchContents + ">>>>>>>\n";
-        writeContents(join(CWD, fileName), contents);
+    /* write the merge of blobs currentBlobHash and branchBlobHash, with
+       common ancestor splitBlobHash, to fileName, returning true iff they
+       conflict.  Null hashes stand for missing files.  Text files present
+       on both sides are merged line by line; otherwise the whole of both
+       versions is streamed between conflict markers. */
+    public boolean mergeConflict(String splitBlobHash, String currentBlobHash,
+                                 String branchBlobHash, String fileName) {
+        if (currentBlobHash != null && branchBlobHash != null
+                && Contents.isTextBlob(currentBlobHash)
+                && Contents.isTextBlob(branchBlobHash)
+                && (splitBlobHash == null
+                    || Contents.isTextBlob(splitBlobHash))) {
+            ThreeWayMerge merged = new ThreeWayMerge(blobLines(splitBlobHash),
+                    blobLines(currentBlobHash), blobLines(branchBlobHash),
+                    Diff.Algorithm.configured());
+            writeLines(merged.result(), fileName);
+            return merged.conflicts() > 0;
+        }
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(join(CWD, fileName).toPath()))) {
+            out.write(marker(ThreeWayMerge.OURS_MARKER));
+            copyBlob(currentBlobHash, out);
+            out.write(marker(ThreeWayMerge.SEPARATOR));
+            copyBlob(branchBlobHash, out);
+            out.write(marker(ThreeWayMerge.THEIRS_MARKER));
+        } catch (IOException excp) {
+            throw error("Could not write %s", fileName);
+        }
+        return true;
+    }
+
+    /* the bytes of conflict marker line text. */
+    private static byte[] marker(String text) {
+        return (text + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /* write lines, each ending in a newline, to fileName. */
+    private void writeLines(List<String> lines, String fileName) {
+        try (Writer out = Files.newBufferedWriter(join(CWD, fileName)
+                .toPath(), StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                out.write(line);
+                out.write('\n');
+            }
+        } catch (IOException excp) {
+            throw error("Could not write %s", fileName);
+        }
+    }
+
+    /* stream the contents of blob sha1, if not null, to out. */
+    private void copyBlob(String sha1, OutputStream out) throws IOException {
+        if (sha1 != null) {
+            try (InputStream in = ObjectStore.open(ObjectStore.Kind.BLOB,
+                    sha1)) {
+                in.transferTo(out);
+            }
+        }
     }
 
     public void merge(String branch) throws IOException {
@@ -493,30 +657,29 @@ public class Command {
         if (mergePrecondition(branch)) {
             return;
         }
-        List<String> list = plainFilenamesIn(CWD);
+        List<String> list = FileIndex.workingFiles();
         Commit currentC = getCommit();
-        HashMap<String, String> currentBlob = currentC.getBlobHash();
         String branchHash = readContentsAsString(join(BRANCHES_DIR,
                 branch + ".txt"));
-        Commit branchC = readObject(join(COMMITS_DIR,
-                branchHash + ".txt"), Commit.class);
-        HashMap<String, String> branchBlob = branchC.getBlobHash();
-        if (checkUntracked(list, currentBlob, branchBlob)) {
+        Commit branchC = Commit.getCommit(branchHash);
+        if (checkUntracked(list,
+                Tree.diff(currentC.getTree(), branchC.getTree()))) {
             return;
         }
-        Commit split = findSplit(branchC, currentC);
-        HashMap<String, String> splitBlob = split.getBlobHash();
-        if (split.getSelfSha1().equals(currentC.getSelfSha1())) {
+        Reachability reach = Reachability.get();
+        if (reach.isAncestor(currentC.getSelfSha1(), branchHash)) {
             checkoutBranch(branch);
             message("Current branch fast-forwarded.");
             return;
         }
-        if ((split.getSelfSha1()).equals(branchC.getSelfSha1())) {
+        if (reach.isAncestor(branchHash, currentC.getSelfSha1())) {
             message("Given branch is an ancestor of the current branch.");
             return;
         }
-        conflictExist = mergeHelper(splitBlob, branchBlob,
-                currentBlob, branchHash);
+        String split = findSplit(branchC, currentC);
+        conflictExist = mergeHelper(
+                Tree.diff(split, branchC.getTree()),
+                currentC, branchHash);
 
         if (conflictExist) {
             message("Encountered a merge conflict.");
@@ -532,102 +695,134 @@ public class Command {
 
     }
 
-    public boolean mergeHelper(HashMap<String, String> splitBlob,
-                               HashMap<String, String> branchBlob,
-                               HashMap<String, String> currentBlob,
+    public boolean mergeHelper(List<Tree.Change> branchChanges,
+                               Commit currentC,
                                String branchHash) throws IOException {
         boolean conflictExist = false;
-        Set<String> splitSet = splitBlob.keySet();
-        for (String f : splitSet) {
-            String splitHash = splitBlob.get(f);
-            if (branchBlob.containsKey(f) && currentBlob.containsKey(f)) {
-                if (!branchBlob.get(f).equals(splitHash)
-                        && currentBlob.get(f).equals(splitHash)) {
+        for (Tree.Change change : branchChanges) {
+            String f = change.path;
+            String splitHash = change.before;
+            String branchF = change.after;
+            String currentF = currentC.getBlobHashKey(f);
+            if (splitHash == null) {
+                if (currentF == null) {
                     checkoutCommitFile(branchHash, f);
                     add(f);
-                } else if (!branchBlob.get(f).equals(splitHash)
-                        && !currentBlob.get(f).equals(branchBlob.get(f))) {
-                    mergeConflict(currentBlob.get(f), branchBlob.get(f), f);
+                } else if (!currentF.equals(branchF)) {
+                    conflictExist |= mergeConflict(splitHash, currentF,
+                            branchF, f);
                     add(f);
-                    conflictExist = true;
                 }
-            } else if (branchBlob.containsKey(f)
-                    && !branchBlob.get(f).equals(splitHash)
-                    && !currentBlob.containsKey(f)) {
-                mergeConflict(null, branchBlob.get(f), f);
-                add(f);
-                conflictExist = true;
-            } else if (currentBlob.containsKey(f)
-                    && !currentBlob.get(f).equals(splitHash)
-                    && !branchBlob.containsKey(f)) {
-                mergeConflict(currentBlob.get(f), null, f);
-                add(f);
-                conflictExist = true;
-            } else if (!branchBlob.containsKey(f)
-                    && currentBlob.containsKey(f)) {
-                remove(f);
-            }
-        }
-        for (String f : branchBlob.keySet()) {
-            if (!splitBlob.containsKey(f)) {
-                if (!currentBlob.containsKey(f)) {
+            } else if (branchF != null && currentF != null) {
+                if (currentF.equals(splitHash)) {
                     checkoutCommitFile(branchHash, f);
                     add(f);
-                } else if (currentBlob.containsKey(f)
-                        && !currentBlob.get(f).equals(branchBlob.get(f))) {
-                    mergeConflict(currentBlob.get(f), branchBlob.get(f), f);
+                } else if (!currentF.equals(branchF)) {
+                    conflictExist |= mergeConflict(splitHash, currentF,
+                            branchF, f);
+                    add(f);
+                }
+            } else if (branchF != null) {
+                mergeConflict(splitHash, null, branchF, f);
+                add(f);
+                conflictExist = true;
+            } else if (currentF != null) {
+                if (!currentF.equals(splitHash)) {
+                    mergeConflict(splitHash, currentF, null, f);
                     add(f);
                     conflictExist = true;
+                } else {
+                    remove(f);
                 }
             }
         }
         return conflictExist;
     }
 
-    public Commit findSplit(Commit branchC, Commit currentC) {
-        HashSet<String> path = new HashSet<>();
-        Stack<Commit> stack = new Stack<>();
-        stack.push(branchC);
-
-        while (!stack.isEmpty()) {
-            Commit c = stack.pop();
-            path.add(c.getSelfSha1());
-            Commit parent1 = c.getParentOneCommit();
-            Commit parent2 = c.getParentTwoCommit();
-            if (parent1 != null) {
-                stack.add(parent1);
-            }
-            if (parent2 != null) {
-                stack.add(parent2);
-            }
-        }
-
-        ArrayDeque<Commit> deque = new ArrayDeque<>();
-        deque.add(currentC);
-        while (!deque.isEmpty()) {
-            Commit c = deque.pop();
-            if (path.contains(c.getSelfSha1())) {
-                return c;
-            }
-            Commit parent1 = c.getParentOneCommit();
-            Commit parent2 = c.getParentTwoCommit();
-            if (parent1 != null) {
-                deque.add(parent1);
-            }
-            if (parent2 != null) {
-                deque.add(parent2);
+    /* return the id of the tree that branchC and currentC are merged
+       against: that of their best common ancestor or, when criss-cross
+       merges leave several, of a virtual ancestor made by merging them
+       in turn, as git's recursive merge does, so that the result does
+       not depend on which of them is taken. */
+    public String findSplit(Commit branchC, Commit currentC) {
+        CommitGraph graph = CommitGraph.get();
+        return splitTree(graph, graph.position(currentC.getSelfSha1()),
+                graph.position(branchC.getSelfSha1()));
+    }
+
+    /* return the id of the tree of the merge base of the commits at a and
+       b in graph, or null if they have no common ancestor.  each best
+       common ancestor after the first is merged into the virtual ancestor
+       against its own merge base with the first, found the same way. */
+    private String splitTree(CommitGraph graph, int a, int b) {
+        List<Integer> bases = graph.mergeBases(a, b);
+        if (bases.isEmpty()) {
+            return null;
+        }
+        String tree = Commit.getCommitHeader(graph.id(bases.get(0)))
+                .getTree();
+        for (int i = 1; i < bases.size(); i += 1) {
+            String ancestor = splitTree(graph, bases.get(0), bases.get(i));
+            tree = mergeTrees(ancestor, tree, Commit.getCommitHeader(
+                    graph.id(bases.get(i))).getTree());
+        }
+        return tree;
+    }
+
+    /* store and return the id of the tree merging trees ours and theirs
+       against base, which may be null.  text files changed on both sides
+       get their merged lines, with conflict markers around any
+       conflicts, and other files changed on both sides keep ours.  the
+       tree and the blobs made for it belong to no commit, so gc removes
+       them. */
+    private String mergeTrees(String base, String ours, String theirs) {
+        HashMap<String, String> baseFiles = base == null
+                ? new HashMap<>() : Tree.read(base);
+        HashMap<String, String> ourFiles = Tree.read(ours);
+        HashMap<String, String> theirFiles = Tree.read(theirs);
+        HashMap<String, String> result = new HashMap<>(ourFiles);
+        HashSet<String> names = new HashSet<>(ourFiles.keySet());
+        names.addAll(theirFiles.keySet());
+        for (String f : names) {
+            String baseF = baseFiles.get(f), ourF = ourFiles.get(f),
+                    theirF = theirFiles.get(f);
+            if (Objects.equals(ourF, theirF)
+                    || Objects.equals(theirF, baseF)) {
+                continue;
+            }
+            if (Objects.equals(ourF, baseF)) {
+                if (theirF == null) {
+                    result.remove(f);
+                } else {
+                    result.put(f, theirF);
+                }
+            } else if (ourF != null && theirF != null
+                    && Contents.isTextBlob(ourF)
+                    && Contents.isTextBlob(theirF)
+                    && (baseF == null || Contents.isTextBlob(baseF))) {
+                ThreeWayMerge merged = new ThreeWayMerge(blobLines(baseF),
+                        blobLines(ourF), blobLines(theirF),
+                        Diff.Algorithm.configured());
+                StringBuilder text = new StringBuilder();
+                for (String line : merged.result()) {
+                    text.append(line).append('\n');
+                }
+                byte[] contents =
+                        text.toString().getBytes(StandardCharsets.UTF_8);
+                String id = sha1(contents);
+                ObjectStore.write(ObjectStore.Kind.BLOB, id, contents);
+                result.put(f, id);
             }
         }
-        return null;
+        return Tree.write(result);
     }
 
 
     public boolean checkUntracked(List<String> list,
-                                  HashMap<String, String> currentBlob,
-                                  HashMap<String, String> otherBlob) {
-        for (String fileName : list) {
-            if (otherBlob.containsKey(fileName)
-                    && !currentBlob.containsKey(fileName)) {
+                                  List<Tree.Change> changes) {
+        HashSet<String> present = new HashSet<>(list);
+        for (Tree.Change change : changes) {
+            if (change.before == null && present.contains(change.path)) {
                 message("There is an untracked file in the way; "
                         + "delete it, or add and commit it first.");
                 return true;
@@ -643,197 +838,142 @@ public class Command {
         return false;
     }
 
-    public void diffPrint(File file1, File file2, String one, String two) {
-        Diff dif = new Diff();
-
-        dif.setSequences(file1, file2);
-        if (file1 != null) {
-            if (dif.sequencesEqual()) {
-                return;
-            }
-        }
-        if (file2 == null || file1 == null) {
-            if (file2 == null) {
-                message("diff --git a/" + one + " /dev/null");
-                message("--- a/" + one);
-                message("+++ /dev/null");
-            } else if (file1 == null) {
-                message("diff --git /dev/null" + "b/" + one);
-                message("--- /dev/null");
-                message("+++ b/" + one);
-                message("@@ -0,0 +1 @@\n"
-                        + "+This is a wug.");
-            }
-            int[] array = dif.diffs();
-            for (int i = 0; i < array.length; i += 4) {
-                String result = "@@ -";
-                if (array[i + 1] != 0) {
-                    result = result + (array[i] + 1);
-                } else {
-                    result += array[i];
-                }
-                if (array[i + 1] != 1) {
-                    result = result + "," + array[i + 1];
-                }
-                result += " +";
-                if (array[i + 3] != 0) {
-                    result = result + (array[i + 2] + 1);
-                } else {
-                    result += array[i + 2];
-                }
-                if (array[i + 3] != 1) {
-                    result = result + "," + array[i + 3];
-                }
-                result += " @@";
-                message(result);
-                for (int k = array[i]; k < array[i] + array[i + 1]; k++) {
-                    message("-" + dif.get1(k));
-                }
-                for (int j = array[i + 2];
-                     j < array[i + 2] + array[i + 3]; j++) {
-                    message("+" + dif.get2(j));
-                }
-            }
-            return;
+    public List<String> blobLines(String sha1) {
+        if (sha1 == null
+                || !ObjectStore.contains(ObjectStore.Kind.BLOB, sha1)) {
+            return Collections.emptyList();
         }
+        return Diff.lines(ObjectStore.read(ObjectStore.Kind.BLOB, sha1));
+    }
 
-        diffPrintHelper(dif, one, two);
+    public List<String> fileLines(File file) {
+        return Diff.lines(readContents(file));
     }
-    public void diffPrintHelper(Diff dif, String one, String two) {
-        message("diff --git a/" + one + " b/" + two);
-        message("--- a/" + one);
-        message("+++ b/" + two);
-        int[] arr = dif.diffs();
-        for (int i = 0; i < arr.length; i += 4) {
-            String result = "@@ -";
-            if (arr[i + 1] != 0) {
-                result = result + (arr[i] + 1);
-            } else {
-                result += arr[i];
-            }
-            if (arr[i + 1] != 1) {
-                result = result + "," + arr[i + 1];
-            }
-            result += " +";
-            if (arr[i + 3] != 0) {
-                result = result + (arr[i + 2] + 1);
-            } else {
-                result += arr[i + 2];
-            }
-            if (arr[i + 3] != 1) {
-                result = result + "," + arr[i + 3];
-            }
-            result += " @@";
-            message(result);
-            for (int k = arr[i]; k < arr[i] + arr[i + 1]; k++) {
-                message("-" + dif.get1(k));
-            }
-            for (int j = arr[i + 2]; j < arr[i + 2] + arr[i + 3]; j++) {
-                message("+" + dif.get2(j));
-            }
+
+    /* the lines of blob sha1 for diff, or UnifiedDiff.BINARY if it is
+       binary or too large to compare line by line. */
+    private List<String> diffLines(String sha1) {
+        if (sha1 != null && ObjectStore.contains(ObjectStore.Kind.BLOB, sha1)
+                && !Contents.isTextBlob(sha1)) {
+            return UnifiedDiff.BINARY;
         }
+        return blobLines(sha1);
     }
-    public void diffNonArg() {
-        Commit commit = getCommit();
-        HashMap<String, String> blobHash = commit.getBlobHash();
-        for (String f : plainFilenamesIn(CWD)) {
-            if (blobHash.containsKey(f)) {
-                String commitF = blobHash.get(f);
-                diffPrint(join(BLOBS_DIR, commitF + ".txt"),
-                        currentFile(f), f, f);
-            }
-        }
-        for (String f : blobHash.keySet()) {
-            if (!currentFile(f).exists()) {
-                String commitF = blobHash.get(f);
-                diffPrint(join(BLOBS_DIR, commitF + ".txt"),
-                        null, f, f);
-            }
+
+    /* the lines of file for diff, or UnifiedDiff.BINARY if it is binary or
+       too large to compare line by line. */
+    private List<String> diffLines(File file) {
+        if (!Contents.isTextFile(file)) {
+            return UnifiedDiff.BINARY;
         }
+        return fileLines(file);
     }
 
-    public void diffOneArg(String branch) {
+    public void diffNonArg(UnifiedDiff out) {
+        diffWorking(getCommit(), out);
+    }
+
+    public void diffOneArg(String branch, UnifiedDiff out) {
         String branchHash = readContentsAsString(join(BRANCHES_DIR,
                 branch + ".txt"));
-        Commit commit = Commit.getCommit(branchHash);
+        diffWorking(Commit.getCommit(branchHash), out);
+    }
+
+    public void diffWorking(Commit commit, UnifiedDiff out) {
         HashMap<String, String> blobHash = commit.getBlobHash();
-        for (String f : plainFilenamesIn(CWD)) {
+        List<String> files = FileIndex.workingFiles();
+        List<String> tracked = new ArrayList<>();
+        for (String f : files) {
+            if (blobHash.containsKey(f)) {
+                tracked.add(f);
+            }
+        }
+        TreeMap<String, String> hashes = fileIndex().hashAll(tracked);
+        List<UnifiedDiff.FilePair> pairs = new ArrayList<>();
+        for (String f : files) {
             if (blobHash.containsKey(f)) {
                 String commitF = blobHash.get(f);
-                diffPrint(join(BLOBS_DIR, commitF + ".txt"),
-                        currentFile(f), f, f);
+                if (!commitF.equals(hashes.get(f))) {
+                    pairs.add(new UnifiedDiff.FilePair(f,
+                            () -> diffLines(commitF),
+                            () -> diffLines(currentFile(f))));
+                }
             }
         }
         for (String f : blobHash.keySet()) {
             if (!currentFile(f).exists()) {
                 String commitF = blobHash.get(f);
-                diffPrint(join(BLOBS_DIR, commitF + ".txt"),
-                        null, f, f);
+                pairs.add(new UnifiedDiff.FilePair(f,
+                        () -> diffLines(commitF), () -> null));
             }
         }
+        out.files(pairs);
     }
 
-    public void diffTwoArgs(String branch1, String branch2) {
+    public void diffTwoArgs(String branch1, String branch2,
+                            UnifiedDiff out) {
         String branchHash1 = readContentsAsString(join(BRANCHES_DIR,
                 branch1 + ".txt"));
         Commit commit = Commit.getCommit(branchHash1);
         String branchHash2 = readContentsAsString(join(BRANCHES_DIR,
                 branch2 + ".txt"));
         Commit commit2 = Commit.getCommit(branchHash2);
-        HashMap<String, String> blobHash1 = commit.getBlobHash();
-        HashMap<String, String> blobHash2 = commit2.getBlobHash();
-        String[] myArray1 = new String[blobHash1.keySet().size()];
-        (blobHash1.keySet()).toArray(myArray1);
-        Arrays.sort(myArray1);
-        String[] myArray2 = new String[blobHash2.keySet().size()];
-        (blobHash2.keySet()).toArray(myArray2);
-        Arrays.sort(myArray2);
-
-        HashSet<String> record = new HashSet<>();
-        for (String f : myArray1) {
-            if (!blobHash2.containsKey(f)) {
-                String commitF = blobHash1.get(f);
-                diffPrint(join(BLOBS_DIR, commitF + ".txt"), null, f, f);
-            } else {
-                String commitF1 = blobHash1.get(f);
-                String commitF2 = blobHash2.get(f);
-                diffPrint(join(BLOBS_DIR, commitF1 + ".txt"),
-                        join(BLOBS_DIR, commitF2 + ".txt"), f, f);
-            }
-            record.add(f);
-        }
-        for (String f : myArray2) {
-            if (!record.contains(f)) {
-                if (!blobHash1.containsKey(f)) {
-                    String commitF = blobHash1.get(f);
-                    diffPrint(null, join(BLOBS_DIR, commitF + ".txt"), f, f);
-                } else {
-                    String commitF1 = blobHash1.get(f);
-                    String commitF2 = blobHash2.get(f);
-                    diffPrint(join(BLOBS_DIR, commitF2 + ".txt"),
-                            join(BLOBS_DIR, commitF1 + ".txt"), f, f);
-                }
-            }
+        List<Tree.Change> changes =
+                Tree.diff(commit.getTree(), commit2.getTree());
+        HashMap<String, Renames.Rename> renamed = new HashMap<>();
+        Set<String> renameTargets = new HashSet<>();
+        for (Renames.Rename rename : Renames.find(changes)) {
+            renamed.put(rename.from, rename);
+            renameTargets.add(rename.to);
+        }
+        List<UnifiedDiff.FilePair> pairs = new ArrayList<>();
+        for (Tree.Change change : changes) {
+            Renames.Rename rename = renamed.get(change.path);
+            if (rename != null) {
+                pairs.add(new UnifiedDiff.FilePair(
+                        rename.from, () -> diffLines(rename.before),
+                        rename.to, () -> diffLines(rename.after),
+                        rename.similarity));
+            } else if (change.before != null) {
+                pairs.add(new UnifiedDiff.FilePair(change.path,
+                        () -> diffLines(change.before),
+                        () -> change.after == null ? null
+                                : diffLines(change.after)));
+            }
+        }
+        for (Tree.Change change : changes) {
+            if (change.before == null
+                    && !renameTargets.contains(change.path)) {
+                pairs.add(new UnifiedDiff.FilePair(change.path,
+                        () -> null, () -> diffLines(change.after)));
+            }
+        }
+        out.files(pairs);
+    }
+
+    /* Print the differences, with CONTEXT lines of context, between the
+       head commit, or BRANCH1 if given, and the working files, or BRANCH2
+       if given. */
+    public void diff(String branch1, String branch2, int context) {
+        if (branch1 != null && !branchExist(branch1)) {
+            message(branch2 == null
+                    ? "A branch with that name does not exist."
+                    : "At least one branch does not exist.");
+            return;
         }
-    }
-
-    public void diff(String branch1, String branch2) {
-        if (branch1 != null || branch2 != null) {
-            if (branch2 == null) {
-                if (!branchExist(branch1)) {
-                    message("A branch with that name does not exist.");
-                    return;
-                }
-                diffOneArg(branch1);
-                return;
-            }
-            if (!branchExist(branch1) || !branchExist(branch2)) {
-                message("At least one branch does not exist.");
-                return;
-            }
-            diffTwoArgs(branch1, branch2);
+        if (branch2 != null && !branchExist(branch2)) {
+            message("At least one branch does not exist.");
             return;
         }
-        diffNonArg();
+        UnifiedDiff out = new UnifiedDiff(System.out, context,
+                Diff.Algorithm.configured());
+        if (branch2 != null) {
+            diffTwoArgs(branch1, branch2, out);
+        } else if (branch1 != null) {
+            diffOneArg(branch1, out);
+        } else {
+            diffNonArg(out);
+        }
+        out.flush();
     }
 }
@@ -1,28 +1,78 @@
 package gitlet;
 
-import java.io.File;
-import java.io.Serializable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
 
 import static gitlet.Utils.*;
 
 /**
  * Commit Class.
  *
+ * A commit is stored in a compact binary form: a magic number and format
+ * version, then parent ids and the id of the commit's root Tree as raw
+ * 20-byte digests, commit time in milliseconds since the epoch, time zone
+ * offset in minutes, and the message.  Version 1 commits instead followed
+ * the message with the whole file map as entries sorted by path; they are
+ * still read, and their header can be decoded without the file map.
+ *
+ * Commits read are kept in a bounded LRU cache shared by every lookup,
+ * so a traversal of history decodes each commit at most once.  A commit
+ * weighs one, plus the number of its files once its file map is read,
+ * so that the cache bounds memory rather than just the number of
+ * commits.
+ *
  * @author Taiga Kitao.
  */
 
-public class Commit implements Serializable {
+public class Commit {
+    /**
+     * Magic number at the start of every encoded commit.
+     */
+    static final int MAGIC = 0x4743;
+    /**
+     * Current commit format version.
+     */
+    static final int VERSION = 2;
+    /**
+     * Configuration key giving the total weight of the commits kept in
+     * the cache.
+     */
+    static final String CACHE_SIZE = "core.commitCache";
+    /**
+     * Default for CACHE_SIZE.
+     */
+    private static final int DEFAULT_CACHE_SIZE = 1 << 16;
+    /**
+     * Timestamp printed for the initial commit, as it always has been.
+     */
+    private static final String INITIAL_TIMESTAMP =
+            "Thu Jan 1 00:00:00 1970 +0000";
+    /**
+     * Recently read commits by id.  Commits never change once written,
+     * so a cached commit is never stale.
+     */
+    private static LruCache<String, Commit> cache;
     /**
      * Message about commit.
      */
     private String message;
     /**
-     * Timestamp when commit was created.
+     * Time when commit was created, in milliseconds since the epoch.
+     */
+    private long time;
+    /**
+     * Offset of the creator's time zone from UTC, in minutes.
      */
-    private String timestamp;
+    private int zoneOffset;
     /**
      * The unique sha1 hash for commit object.
      */
@@ -36,15 +86,13 @@ public class Commit implements Serializable {
      */
     private String parentTwo;
     /**
-     * The parent list of sha1 hash for merge.
+     * The id of the root tree of files, or null for a version 1 commit
+     * whose tree has not yet been written.
      */
-    private String[] parentList = null;
+    private String tree;
     /**
-     * Current file for this specific commit using selfSha1.
-     */
-    private File currFile;
-    /**
-     * HashMap: all the blob files hash with fileName as keys.
+     * HashMap: all the blob files hash with fileName as keys, or null
+     * if not yet read.
      */
     private HashMap<String, String> blobHash;
 
@@ -54,37 +102,66 @@ public class Commit implements Serializable {
      * @param messageP
      * @param parent1
      * @param parent2
-     * @param blobHashP
+     * @param treeP
      */
 
     public Commit(String messageP, String parent1, String parent2,
-                  HashMap<String, String> blobHashP) {
+                  String treeP) {
         this.message = messageP;
         this.parentOne = parent1;
         this.parentTwo = parent2;
         if (this.parentOne == null) {
-
-            this.timestamp = "Thu Jan 1 00:00:00 1970 +0000";
+            this.time = 0;
+            this.zoneOffset = 0;
         } else {
-            this.timestamp = dateGenerator();
+            this.time = System.currentTimeMillis();
+            this.zoneOffset =
+                    TimeZone.getDefault().getOffset(this.time) / 60000;
         }
-        this.blobHash = blobHashP;
+        this.tree = treeP;
         this.selfSha1 = createSha1();
-        this.currFile = join(Command.COMMITS_DIR, this.selfSha1 + ".txt");
+    }
+
+    /** A commit with id SELFSHA1P and the given header fields, whose files
+     *  are given by the tree TREEP or, if that is null, by BLOBHASHP. */
+    Commit(String selfSha1P, String messageP, String parent1,
+           String parent2, long timeP, int zoneOffsetP, String treeP,
+           HashMap<String, String> blobHashP) {
+        this.selfSha1 = selfSha1P;
+        this.message = messageP;
+        this.parentOne = parent1;
+        this.parentTwo = parent2;
+        this.time = timeP;
+        this.zoneOffset = zoneOffsetP;
+        this.tree = treeP;
+        this.blobHash = blobHashP;
     }
 
     /*save current file according to the selfSha1.*/
     public void save() {
-        writeObject(currFile, this);
+        ObjectStore.write(ObjectStore.Kind.COMMIT, selfSha1, encode());
+        IdIndex.commits().insert(selfSha1);
+        cache().put(selfSha1, this);
+        CommitGraph.get().add(this);
+        MessageIndex.add(this);
+        ChangedPaths.sync();
     }
 
-    /*get commit object using selfSha1.*/
+    /*get commit object using selfSha1, which may be abbreviated.*/
     public static Commit getCommit(String selfSha1) {
-        if (selfSha1 == null) {
-            return null;
-        }
-        return readObject(join(Command.COMMITS_DIR,
-                selfSha1 + ".txt"), Commit.class);
+        return readCommit(selfSha1, false);
+    }
+
+    /*get commit object using selfSha1, decoding only its header; the
+     * blob map is read on first use.*/
+    public static Commit getCommitHeader(String selfSha1) {
+        return readCommit(selfSha1, true);
+    }
+
+    /*return the ids of commits starting with prefix; more than one
+     * means the prefix is ambiguous.*/
+    public static List<String> findIds(String prefix) {
+        return IdIndex.commits().find(prefix, 2);
     }
 
     /*return message.*/
@@ -94,7 +171,23 @@ public class Commit implements Serializable {
 
     /*return timestamp.*/
     public String getTimestamp() {
-        return timestamp;
+        if (parentOne == null && time == 0) {
+            return INITIAL_TIMESTAMP;
+        }
+        SimpleDateFormat ft =
+                new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z");
+        ft.setTimeZone(new SimpleTimeZone(zoneOffset * 60000, "commit"));
+        return ft.format(new Date(time));
+    }
+
+    /* return commit time in milliseconds since the epoch. */
+    public long getTime() {
+        return time;
+    }
+
+    /* return the time zone offset of the commit in minutes. */
+    public int getZoneOffset() {
+        return zoneOffset;
     }
 
     /*return parent.*/
@@ -119,28 +212,147 @@ public class Commit implements Serializable {
         return selfSha1;
     }
 
-    /* return blobHash. */
-    public HashMap<String, String> getBlobHash() {
+    /* return the id of the root tree. */
+    public synchronized String getTree() {
+        if (tree == null) {
+            tree = Tree.write(getBlobHash());
+        }
+        return tree;
+    }
+
+    /* return blobHash, which is shared with other users of this commit
+     * and must not be modified.  A commit read from the store is put back
+     * in the cache once its map is read, so that it is weighed again. */
+    public synchronized HashMap<String, String> getBlobHash() {
+        if (blobHash == null) {
+            if (tree != null) {
+                blobHash = Tree.read(tree);
+            } else {
+                blobHash = decode(selfSha1, ObjectStore.read(
+                        ObjectStore.Kind.COMMIT, selfSha1), false).blobHash;
+            }
+            if (selfSha1 != null) {
+                cache().put(selfSha1, this);
+            }
+        }
         return blobHash;
     }
 
     public String getBlobHashKey(String fileName) {
-        return blobHash.get(fileName);
+        if (blobHash == null && tree != null) {
+            return Tree.lookup(tree, fileName);
+        }
+        return getBlobHash().get(fileName);
     }
 
     /* create sha1 id */
     public String createSha1() {
-        return sha1(serialize(this));
+        return sha1(encode());
+    }
+
+    /* return the binary encoding of this commit. */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte((parentOne != null ? 1 : 0)
+                    | (parentTwo != null ? 2 : 0));
+            if (parentOne != null) {
+                writeId(out, parentOne);
+            }
+            if (parentTwo != null) {
+                writeId(out, parentTwo);
+            }
+            writeId(out, getTree());
+            out.writeLong(time);
+            out.writeShort(zoneOffset);
+            writeString(out, message);
+            out.close();
+        } catch (IOException excp) {
+            throw error("Internal error serializing commit.");
+        }
+        return bytes.toByteArray();
+    }
 
+    /* return the commit with id id encoded in contents, decoding only its
+     * header if headerOnly. */
+    public static Commit decode(String id, byte[] contents,
+                                boolean headerOnly) {
+        if (Migration.isLegacy(contents)) {
+            return Migration.legacyCommit(id, contents);
+        }
+        DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(contents));
+        try {
+            int version = -1;
+            if (in.readUnsignedShort() == MAGIC) {
+                version = in.readUnsignedByte();
+            }
+            if (version != 1 && version != VERSION) {
+                throw error("Unknown commit format: %s", id);
+            }
+            int parents = in.readUnsignedByte();
+            String parent1 = (parents & 1) != 0 ? readId(in) : null;
+            String parent2 = (parents & 2) != 0 ? readId(in) : null;
+            String treeId = version == 1 ? null : readId(in);
+            long time = in.readLong();
+            int zoneOffset = in.readShort();
+            String message = readString(in);
+            HashMap<String, String> blobHash =
+                    version != 1 || headerOnly ? null : readIdMap(in);
+            return new Commit(id, message, parent1, parent2, time,
+                    zoneOffset, treeId, blobHash);
+        } catch (IOException excp) {
+            throw error("Corrupt commit: %s", id);
+        }
+    }
+
+    /* read the commit with id selfSha1, which may be abbreviated. */
+    private static Commit readCommit(String selfSha1, boolean headerOnly) {
+        if (selfSha1 == null) {
+            return null;
+        }
+        String id = selfSha1;
+        if (!ObjectStore.isId(id)) {
+            List<String> found = findIds(id);
+            if (found.size() != 1) {
+                return null;
+            }
+            id = found.get(0);
+        }
+        Commit result = cache().get(id);
+        if (result == null) {
+            result = decode(id, ObjectStore.read(ObjectStore.Kind.COMMIT, id),
+                    headerOnly);
+            cache().put(id, result);
+        }
+        return result;
+    }
 
+    /* return the commit cache, creating it on first use.  Commits are
+     * read from several threads at once by gc. */
+    private static synchronized LruCache<String, Commit> cache() {
+        if (cache == null) {
+            cache = new LruCache<>(Math.max(1, Config.getInt(CACHE_SIZE,
+                    DEFAULT_CACHE_SIZE)), Commit::weight);
+        }
+        return cache;
     }
 
-    public static String dateGenerator() {
-        Date dNow = new Date();
-        SimpleDateFormat ft =
-                new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z");
+    /* return the weight of commit c in the cache. */
+    private static long weight(Commit c) {
+        return 1 + (c.blobHash == null ? 0 : c.blobHash.size());
+    }
+
+    /* return the number of commit lookups answered from the cache. */
+    public static long cacheHits() {
+        return cache().hits();
+    }
 
-        String date = ft.format(dNow);
-        return date;
+    /* return the number of commit lookups that read the object store. */
+    public static long cacheMisses() {
+        return cache().misses();
     }
 }
@@ -0,0 +1,669 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.PriorityQueue;
+
+import static gitlet.Utils.*;
+
+/** The commit graph: a side file holding the shape of history, so that
+ *  walks over it need read no commit objects.  As in Git's commit-graph
+ *  file, each commit has a fixed-width record giving its id, the
+ *  positions of its parents' records, its generation number (1 for a
+ *  root commit, otherwise one more than the greatest generation of its
+ *  parents) and its commit time.  Every parent is added before its
+ *  children, so the file only ever grows at the end: adding a commit
+ *  appends a record and then bumps the count in the header, and a record
+ *  past the count, left by an interrupted append, is ignored and
+ *  overwritten.  Commits missing from the file, such as those of older
+ *  repositories, are added with their ancestors when first looked up.
+ *  Ids are found through LOOKUP_FILE, which lists the positions of the
+ *  records sorted by id behind a 256-entry fan-out table, by a binary
+ *  search within the bucket of the id's first byte.  The records added
+ *  since it was written are scanned back from the newest, and the
+ *  lookup file is rewritten once they outnumber an eighth of those it
+ *  covers.  TIME_FILE likewise lists the positions by decreasing commit
+ *  time, for walks over all commits newest first, and is rewritten on
+ *  the same rule; the records it misses are sorted when a walk begins. */
+class CommitGraph {
+
+    /** File holding the graph. */
+    static final File GRAPH_FILE = join(Command.GITLET, "commit-graph");
+    /** File holding the positions of the records, sorted by id. */
+    static final File LOOKUP_FILE =
+        join(Command.GITLET, "commit-graph.lookup");
+    /** File holding the positions of the records by decreasing commit
+     *  time. */
+    static final File TIME_FILE = join(Command.GITLET, "commit-graph.time");
+    /** Parent position of a missing parent. */
+    static final int NONE = -1;
+
+    /** Merge-base flag of commits reached from the first commit. */
+    private static final int SIDE_A = 1;
+    /** Merge-base flag of commits reached from the second commit. */
+    private static final int SIDE_B = 2;
+    /** Both SIDE_A and SIDE_B. */
+    private static final int BOTH = SIDE_A | SIDE_B;
+    /** Merge-base flag of ancestors of a common ancestor. */
+    private static final int STALE = 4;
+
+    /** Magic number at the start of the graph file. */
+    private static final int MAGIC = 0x47475048;
+    /** Current graph format version. */
+    private static final int VERSION = 1;
+    /** Length of the header: magic, version, count. */
+    private static final int HEADER_BYTES = 3 * 4;
+    /** Length of a raw id. */
+    private static final int ID_BYTES = ObjectStore.ID_BYTES;
+    /** Length of a record: id, two parents, generation, time. */
+    private static final int RECORD_BYTES = ID_BYTES + 3 * 4 + 8;
+    /** Magic number at the start of the lookup file. */
+    private static final int LOOKUP_MAGIC = 0x47474c4b;
+    /** Magic number at the start of the time file. */
+    private static final int TIME_MAGIC = 0x47475449;
+    /** Byte offset of the first position in the time file, after the
+     *  header (magic, version, count). */
+    private static final int TIME_START = 3 * 4;
+    /** Size of the fan-out table of the lookup file. */
+    private static final int FANOUT = 256;
+    /** Byte offset of the first position in the lookup file, after the
+     *  header (magic, version, count) and the fan-out table. */
+    private static final int LOOKUP_START = 3 * 4 + FANOUT * 4;
+    /** Fewest records missing from the lookup file that cause it to be
+     *  rewritten. */
+    private static final int MIN_TAIL = 64;
+
+    /** A graph stored in GRAPH_FILE. */
+    private CommitGraph() {
+        _positions = new HashMap<>();
+    }
+
+    /** Return the commit graph of this repository, creating its file on
+     *  first use. */
+    static CommitGraph get() {
+        if (_graph == null) {
+            _graph = new CommitGraph();
+            if (!GRAPH_FILE.isFile()) {
+                _graph.create();
+                for (String id : ObjectStore.ids(ObjectStore.Kind.COMMIT)) {
+                    _graph.position(id);
+                }
+            }
+        }
+        return _graph;
+    }
+
+    /** Forget the graph, so that it is reread on next use. */
+    static void close() {
+        _graph = null;
+    }
+
+    /** Remove the graph and the other files derived from the set of
+     *  commits, so that they are rebuilt from the commits now stored, and
+     *  rebuild the commit index and the bitmaps of the branch tips now.
+     *  Called once commits have been deleted or given new ids. */
+    static void rebuild() {
+        File[] derived = {
+            IdIndex.COMMITS_INDEX, GRAPH_FILE, LOOKUP_FILE, TIME_FILE,
+            Reachability.BITMAPS_FILE, MessageIndex.LOG_FILE,
+            MessageIndex.INDEX_FILE, ChangedPaths.PATHS_FILE
+        };
+        for (File file : derived) {
+            file.delete();
+        }
+        List<String> saved = plainFilenamesIn(Blame.BLAME_DIR);
+        if (saved != null) {
+            for (String name : saved) {
+                join(Blame.BLAME_DIR, name).delete();
+            }
+        }
+        IdIndex.closeCommits();
+        close();
+        Reachability.close();
+        MessageIndex.close();
+        ChangedPaths.close();
+        IdIndex.commits();
+        Reachability.get().update();
+    }
+
+    /** Return the number of commits in the graph. */
+    int size() {
+        return map().getInt(8);
+    }
+
+    /** Return the position of commit ID, adding it and any of its
+     *  ancestors that are missing. */
+    int position(String id) {
+        Integer pos = find(id);
+        if (pos != null) {
+            return pos;
+        }
+        return add(header(id));
+    }
+
+    /** Add COMMIT and any of its ancestors that are missing, returning
+     *  the position of COMMIT. */
+    int add(Commit commit) {
+        ArrayDeque<Commit> pending = new ArrayDeque<>();
+        pending.push(commit);
+        while (!pending.isEmpty()) {
+            Commit c = pending.peek();
+            if (find(c.getSelfSha1()) != null) {
+                pending.pop();
+                continue;
+            }
+            String p1 = c.getParentOne(), p2 = c.getParentTwo();
+            Integer pos1 = p1 == null ? Integer.valueOf(NONE) : find(p1);
+            Integer pos2 = p2 == null ? Integer.valueOf(NONE) : find(p2);
+            if (pos1 == null) {
+                pending.push(header(p1));
+            } else if (pos2 == null) {
+                pending.push(header(p2));
+            } else {
+                append(c, pos1, pos2);
+                pending.pop();
+            }
+        }
+        return find(commit.getSelfSha1());
+    }
+
+    /** Append a record for COMMIT, whose parents are at P1 and P2. */
+    private void append(Commit commit, int p1, int p2) {
+        int generation = 1 + Math.max(p1 == NONE ? 0 : generation(p1),
+                                      p2 == NONE ? 0 : generation(p2));
+        int n = size();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+        record.put(ObjectStore.toRawId(commit.getSelfSha1()));
+        record.putInt(p1).putInt(p2).putInt(generation);
+        record.putLong(commit.getTime());
+        record.flip();
+        try (RandomAccessFile f = new RandomAccessFile(GRAPH_FILE, "rw")) {
+            FileChannel channel = f.getChannel();
+            long offset = HEADER_BYTES + (long) n * RECORD_BYTES;
+            while (record.hasRemaining()) {
+                channel.write(record, offset + record.position());
+            }
+            channel.write(ByteBuffer.allocate(4).putInt(0, n + 1), 8);
+        } catch (IOException excp) {
+            throw error("Could not write commit graph: %s",
+                        excp.getMessage());
+        }
+        _map = null;
+        _positions.put(commit.getSelfSha1(), n);
+        int covered = lookup().getInt(8);
+        if (n + 1 - covered > Math.max(MIN_TAIL, covered / 8)) {
+            writeLookup();
+        }
+        int timed = times().getInt(8);
+        if (n + 1 - timed > Math.max(MIN_TAIL, timed / 8)) {
+            writeTimes();
+        }
+    }
+
+    /** Return the header of commit ID, which must exist. */
+    private static Commit header(String id) {
+        Commit commit = Commit.getCommitHeader(id);
+        if (commit == null) {
+            throw error("No commit with that id exists.");
+        }
+        return commit;
+    }
+
+    /** Return the id of the commit at POS. */
+    String id(int pos) {
+        byte[] raw = new byte[ID_BYTES];
+        map().get(record(pos), raw);
+        return ObjectStore.fromRawId(raw, 0);
+    }
+
+    /** Return the position of the first parent of the commit at POS, or
+     *  NONE. */
+    int parentOne(int pos) {
+        return map().getInt(record(pos) + ID_BYTES);
+    }
+
+    /** Return the position of the second parent of the commit at POS, or
+     *  NONE. */
+    int parentTwo(int pos) {
+        return map().getInt(record(pos) + ID_BYTES + 4);
+    }
+
+    /** Return the generation number of the commit at POS. */
+    int generation(int pos) {
+        return map().getInt(record(pos) + ID_BYTES + 8);
+    }
+
+    /** Return the commit time, in milliseconds since the epoch, of the
+     *  commit at POS. */
+    long time(int pos) {
+        return map().getLong(record(pos) + ID_BYTES + 12);
+    }
+
+    /** Return the positions of the commits made no later than UNTIL, in
+     *  order of decreasing commit time, the later-added first among
+     *  commits made at the same time.  The first is found by a binary
+     *  search of TIME_FILE and the rest are read from it as the walk
+     *  reaches them, so a walk that stops early reads little more than
+     *  the records it returns. */
+    PrimitiveIterator.OfInt byTime(long until) {
+        MappedByteBuffer times = times();
+        int covered = times.getInt(8);
+        int lo = 0, hi = covered;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (time(times.getInt(TIME_START + mid * 4)) > until) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        List<Integer> tail = new ArrayList<>();
+        for (int pos = size() - 1; pos >= covered; pos -= 1) {
+            if (time(pos) <= until) {
+                tail.add(pos);
+            }
+        }
+        tail.sort(this::laterFirst);
+        return new TimeWalk(times, lo, covered, tail);
+    }
+
+    /** Return the ids of all commits in the graph, oldest first. */
+    List<String> ids() {
+        int n = size();
+        List<String> result = new ArrayList<>(n);
+        for (int pos = 0; pos < n; pos += 1) {
+            result.add(id(pos));
+        }
+        return result;
+    }
+
+    /** Return the best common ancestors of the commits at A and B: the
+     *  common ancestors that are not ancestors of another common
+     *  ancestor, in order of decreasing generation, then commit time,
+     *  then increasing id.  There is more than one only after criss-cross
+     *  merges.  As in Git, both sides are walked together from a queue
+     *  ordered by generation number, each commit being marked with the
+     *  sides that reach it; a commit reached from both is a candidate,
+     *  and its ancestors are marked stale.  The walk stops once only stale
+     *  commits remain queued, which a count of the queued commits not
+     *  stale tells without rescanning the queue, so its cost depends on
+     *  how far the two sides have diverged rather than on the length of
+     *  history. */
+    List<Integer> mergeBases(int a, int b) {
+        List<Integer> result = new ArrayList<>();
+        if (a == b) {
+            result.add(a);
+            return result;
+        }
+        HashMap<Integer, Integer> flags = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(this::newerFirst);
+        HashSet<Integer> queued = new HashSet<>();
+        flags.put(a, SIDE_A);
+        flags.put(b, SIDE_B);
+        queue.add(a);
+        queue.add(b);
+        queued.add(a);
+        queued.add(b);
+        int live = 2;
+        while (live > 0) {
+            int c = queue.remove();
+            queued.remove(c);
+            int f = flags.get(c);
+            if ((f & STALE) == 0) {
+                live -= 1;
+            }
+            if ((f & BOTH) == BOTH && (f & STALE) == 0) {
+                result.add(c);
+                f |= STALE;
+                flags.put(c, f);
+            }
+            for (int p : new int[] { parentOne(c), parentTwo(c) }) {
+                if (p == NONE) {
+                    continue;
+                }
+                int old = flags.getOrDefault(p, 0);
+                if ((old | f) == old) {
+                    continue;
+                }
+                flags.put(p, old | f);
+                if (queued.add(p)) {
+                    queue.add(p);
+                    live += ((old | f) & STALE) == 0 ? 1 : 0;
+                } else if ((old & STALE) == 0 && (f & STALE) != 0) {
+                    live -= 1;
+                }
+            }
+        }
+        return removeRedundant(result);
+    }
+
+    /** Return true iff the commit at A is an ancestor of, or is, the
+     *  commit at B.  Only commits of greater generation than A are
+     *  visited, as no other can have A as an ancestor. */
+    boolean isAncestor(int a, int b) {
+        int limit = generation(a);
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        HashSet<Integer> seen = new HashSet<>();
+        stack.push(b);
+        while (!stack.isEmpty()) {
+            int c = stack.pop();
+            if (c == a) {
+                return true;
+            }
+            if (c == NONE || generation(c) <= limit || !seen.add(c)) {
+                continue;
+            }
+            stack.push(parentOne(c));
+            stack.push(parentTwo(c));
+        }
+        return false;
+    }
+
+    /** Return CANDIDATES less any that is an ancestor of another, sorted
+     *  as for mergeBases. */
+    private List<Integer> removeRedundant(List<Integer> candidates) {
+        List<Integer> result = new ArrayList<>();
+        for (int c : candidates) {
+            boolean redundant = false;
+            for (int other : candidates) {
+                if (other != c && isAncestor(c, other)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                result.add(c);
+            }
+        }
+        result.sort(this::newerFirst);
+        return result;
+    }
+
+    /** Compare the commits at X and Y by decreasing generation, then
+     *  decreasing commit time, then increasing id. */
+    private int newerFirst(int x, int y) {
+        int c = Integer.compare(generation(y), generation(x));
+        if (c == 0) {
+            c = Long.compare(time(y), time(x));
+        }
+        if (c == 0) {
+            c = id(x).compareTo(id(y));
+        }
+        return c;
+    }
+
+    /** Compare the commits at X and Y by decreasing commit time, then by
+     *  decreasing position. */
+    private int laterFirst(int x, int y) {
+        int c = Long.compare(time(y), time(x));
+        return c != 0 ? c : Integer.compare(y, x);
+    }
+
+    /** Return the position of commit ID, or null if it is not in the
+     *  file. */
+    private Integer find(String id) {
+        Integer pos = _positions.get(id);
+        if (pos != null || !ObjectStore.isId(id)) {
+            return pos;
+        }
+        byte[] raw = ObjectStore.toRawId(id);
+        MappedByteBuffer lookup = lookup();
+        int b = raw[0] & 0xff;
+        int lo = b == 0 ? 0 : lookup.getInt(3 * 4 + (b - 1) * 4);
+        int hi = lookup.getInt(3 * 4 + b * 4);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int p = lookup.getInt(LOOKUP_START + mid * 4);
+            int c = compareId(p, raw);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid;
+            } else {
+                return p;
+            }
+        }
+        int covered = lookup.getInt(8);
+        if (_scanned < 0) {
+            _scanned = size();
+        }
+        while (_scanned > covered) {
+            _scanned -= 1;
+            String other = id(_scanned);
+            _positions.put(other, _scanned);
+            if (other.equals(id)) {
+                return _scanned;
+            }
+        }
+        return null;
+    }
+
+    /** Compare the id of the commit at POS with the raw id RAW, as
+     *  unsigned bytes. */
+    private int compareId(int pos, byte[] raw) {
+        MappedByteBuffer map = map();
+        int base = record(pos);
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int c = (map.get(base + i) & 0xff) - (raw[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Rewrite the lookup file to cover every record. */
+    private void writeLookup() {
+        int n = size();
+        String[] ids = new String[n];
+        Integer[] order = new Integer[n];
+        int[] counts = new int[FANOUT];
+        for (int pos = 0; pos < n; pos += 1) {
+            ids[pos] = id(pos);
+            order[pos] = pos;
+            counts[Integer.parseInt(ids[pos].substring(0, 2), 16)] += 1;
+        }
+        Arrays.sort(order, (x, y) -> ids[x].compareTo(ids[y]));
+        ByteBuffer lookup = ByteBuffer.allocate(LOOKUP_START + n * 4);
+        lookup.putInt(LOOKUP_MAGIC).putInt(VERSION).putInt(n);
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+            lookup.putInt(total);
+        }
+        for (int pos : order) {
+            lookup.putInt(pos);
+        }
+        File tmp = new File(LOOKUP_FILE.getPath() + ".tmp");
+        writeContents(tmp, lookup.array());
+        tmp.renameTo(LOOKUP_FILE);
+        _lookup = null;
+    }
+
+    /** Return the mapping of the lookup file, writing it if it is missing
+     *  or covers records that the graph does not have, and mapping it on
+     *  first use. */
+    private MappedByteBuffer lookup() {
+        if (_lookup == null) {
+            if (!LOOKUP_FILE.isFile()) {
+                writeLookup();
+            }
+            try (RandomAccessFile f =
+                     new RandomAccessFile(LOOKUP_FILE, "r")) {
+                FileChannel channel = f.getChannel();
+                _lookup = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                      channel.size());
+            } catch (IOException excp) {
+                throw error("Could not read commit graph: %s",
+                            excp.getMessage());
+            }
+            if (_lookup.getInt(0) != LOOKUP_MAGIC
+                || _lookup.getInt(4) != VERSION) {
+                throw error("Bad commit graph file.");
+            }
+            if (_lookup.getInt(8) > size()) {
+                writeLookup();
+                return lookup();
+            }
+        }
+        return _lookup;
+    }
+
+    /** Rewrite the time file to cover every record. */
+    private void writeTimes() {
+        int n = size();
+        Integer[] order = new Integer[n];
+        for (int pos = 0; pos < n; pos += 1) {
+            order[pos] = pos;
+        }
+        Arrays.sort(order, this::laterFirst);
+        ByteBuffer times = ByteBuffer.allocate(TIME_START + n * 4);
+        times.putInt(TIME_MAGIC).putInt(VERSION).putInt(n);
+        for (int pos : order) {
+            times.putInt(pos);
+        }
+        File tmp = new File(TIME_FILE.getPath() + ".tmp");
+        writeContents(tmp, times.array());
+        tmp.renameTo(TIME_FILE);
+        _times = null;
+    }
+
+    /** Return the mapping of the time file, writing it if it is missing
+     *  or covers records that the graph does not have, and mapping it on
+     *  first use. */
+    private MappedByteBuffer times() {
+        if (_times == null) {
+            if (!TIME_FILE.isFile()) {
+                writeTimes();
+            }
+            try (RandomAccessFile f = new RandomAccessFile(TIME_FILE, "r")) {
+                FileChannel channel = f.getChannel();
+                _times = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                     channel.size());
+            } catch (IOException excp) {
+                throw error("Could not read commit graph: %s",
+                            excp.getMessage());
+            }
+            if (_times.getInt(0) != TIME_MAGIC
+                || _times.getInt(4) != VERSION) {
+                throw error("Bad commit graph file.");
+            }
+            if (_times.getInt(8) > size()) {
+                writeTimes();
+                return times();
+            }
+        }
+        return _times;
+    }
+
+    /** Return the offset of the record at POS. */
+    private int record(int pos) {
+        return HEADER_BYTES + pos * RECORD_BYTES;
+    }
+
+    /** Write an empty graph file. */
+    private void create() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(0);
+        writeContents(GRAPH_FILE, header.array());
+    }
+
+    /** Return the mapping of the graph file, mapping it on first use. */
+    private MappedByteBuffer map() {
+        if (_map == null) {
+            try (RandomAccessFile f = new RandomAccessFile(GRAPH_FILE, "r")) {
+                FileChannel channel = f.getChannel();
+                _map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                   channel.size());
+            } catch (IOException excp) {
+                throw error("Could not read commit graph: %s",
+                            excp.getMessage());
+            }
+            if (_map.getInt(0) != MAGIC || _map.getInt(4) != VERSION) {
+                throw error("Bad commit graph file.");
+            }
+        }
+        return _map;
+    }
+
+    /** The mapped graph file, or null if not yet mapped. */
+    private MappedByteBuffer _map;
+    /** The mapped lookup file, or null if not yet mapped. */
+    private MappedByteBuffer _lookup;
+    /** The mapped time file, or null if not yet mapped. */
+    private MappedByteBuffer _times;
+    /** Positions of the commits added since the lookup file was written,
+     *  or found by scanning them, by id. */
+    private final HashMap<String, Integer> _positions;
+    /** Records from this position on that the lookup file does not cover
+     *  have been scanned into _positions, or -1 if scanning has not begun.
+     *  Records added since are entered directly. */
+    private int _scanned = -1;
+
+    /** A walk over positions in order of decreasing commit time, merging
+     *  a run of those listed in the time file with those it misses. */
+    private class TimeWalk implements PrimitiveIterator.OfInt {
+        /** A walk over the positions at entries NEXT .. END-1 of TIMES,
+         *  merged with TAIL, which is in the same order. */
+        TimeWalk(MappedByteBuffer times, int next, int end,
+                 List<Integer> tail) {
+            _timesMap = times;
+            _next = next;
+            _end = end;
+            _tail = tail;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return _next < _end || _tailNext < _tail.size();
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (_tailNext < _tail.size()) {
+                int pos = _tail.get(_tailNext);
+                if (_next == _end || laterFirst(pos, listed()) < 0) {
+                    _tailNext += 1;
+                    return pos;
+                }
+            }
+            int pos = listed();
+            _next += 1;
+            return pos;
+        }
+
+        /** Return the next position listed in the time file. */
+        private int listed() {
+            return _timesMap.getInt(TIME_START + _next * 4);
+        }
+
+        /** The mapped time file. */
+        private final MappedByteBuffer _timesMap;
+        /** The next entry of the time file to return. */
+        private int _next;
+        /** The entry of the time file just past the last to return. */
+        private final int _end;
+        /** The positions the time file misses, in walk order. */
+        private final List<Integer> _tail;
+        /** The index in _tail of the next of them to return. */
+        private int _tailNext;
+    }
+
+    /** The graph of this repository, or null if not yet opened. */
+    private static CommitGraph _graph;
+}
@@ -0,0 +1,85 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Properties;
+
+import static gitlet.Utils.*;
+
+/** Per-repository settings, kept as KEY=VALUE lines in .gitlet/config and
+ *  changed with the config command.  Unset keys take the defaults given
+ *  by the code that reads them. */
+class Config {
+
+    /** File holding the settings. */
+    static final File CONFIG_FILE = join(Command.GITLET, "config");
+
+    /** Number of threads used to scan and hash working files. */
+    static final String THREADS = "core.threads";
+
+    /** If true, report cache statistics on the standard error after each
+     *  command. */
+    static final String STATS = "core.stats";
+
+    /** Return the value of KEY, or DEFLT if it is not set. */
+    static String get(String key, String deflt) {
+        return settings().getProperty(key, deflt);
+    }
+
+    /** Return the integer value of KEY, or DEFLT if it is not set or is
+     *  not a number. */
+    static int getInt(String key, int deflt) {
+        try {
+            return Integer.parseInt(get(key, Integer.toString(deflt)).trim());
+        } catch (NumberFormatException excp) {
+            return deflt;
+        }
+    }
+
+    /** Set KEY to VALUE and save the settings. */
+    static void set(String key, String value) {
+        settings().setProperty(key, value);
+        StringWriter out = new StringWriter();
+        try {
+            _settings.store(out, null);
+        } catch (IOException excp) {
+            throw error("Could not write config: %s", excp.getMessage());
+        }
+        writeContents(CONFIG_FILE, out.toString());
+    }
+
+    /** Forget the settings read so far, so that they are read again on
+     *  next use. */
+    static void reload() {
+        _settings = null;
+    }
+
+    /** Return the number of threads to use for working-tree scans, at
+     *  least 1. */
+    static int threads() {
+        return Math.max(1, getInt(THREADS,
+                Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** Return the settings, reading them on first use. */
+    private static Properties settings() {
+        if (_settings == null) {
+            _settings = new Properties();
+            if (CONFIG_FILE.isFile()) {
+                try {
+                    _settings.load(new StringReader(
+                            readContentsAsString(CONFIG_FILE)));
+                } catch (IOException excp) {
+                    throw error("Could not read config: %s",
+                            excp.getMessage());
+                }
+            }
+        }
+        return _settings;
+    }
+
+    /** The settings, or null if not yet read. */
+    private static Properties _settings;
+}
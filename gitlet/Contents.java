@@ -0,0 +1,88 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import static gitlet.Utils.*;
+
+/** Tests of whether file contents can be compared and merged line by
+ *  line.  As in Git, contents are binary if their first SNIFF_BYTES
+ *  bytes contain a NUL byte, and are treated as binary as well if they
+ *  are longer than core.bigFileThreshold bytes, so that no command
+ *  reads a huge file into memory just to split it into lines.  Only
+ *  the first block and the length are examined.  The length of a blob
+ *  is taken from the object store, so a blob over the threshold is not
+ *  opened at all; blobs whose length is not recorded are read through,
+ *  a buffer at a time, up to the threshold. */
+class Contents {
+
+    /** Config key giving the size in bytes above which files are not
+     *  compared or merged line by line. */
+    static final String BIG_FILE_THRESHOLD = "core.bigFileThreshold";
+
+    /** Number of leading bytes searched for a NUL byte. */
+    private static final int SNIFF_BYTES = 8000;
+    /** Default for BIG_FILE_THRESHOLD. */
+    private static final int DEFAULT_THRESHOLD = 1 << 26;
+    /** Size of the buffer used to read past the first block. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Return true iff blob ID holds text no longer than the threshold. */
+    static boolean isTextBlob(String id) {
+        long length = ObjectStore.size(ObjectStore.Kind.BLOB, id);
+        if (length > threshold()) {
+            return false;
+        }
+        try (InputStream in = ObjectStore.open(ObjectStore.Kind.BLOB, id)) {
+            return isText(in, length);
+        } catch (IOException excp) {
+            throw error("Could not read object %s: %s", id,
+                        excp.getMessage());
+        }
+    }
+
+    /** Return true iff FILE holds text no longer than the threshold. */
+    static boolean isTextFile(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return isText(in, file.length());
+        } catch (IOException excp) {
+            throw error("Could not read %s", file.getName());
+        }
+    }
+
+    /** Return true iff the contents of IN, which are LENGTH bytes long if
+     *  LENGTH is not negative, are text no longer than the threshold. */
+    private static boolean isText(InputStream in, long length)
+        throws IOException {
+        long threshold = threshold();
+        if (length > threshold) {
+            return false;
+        }
+        byte[] buf = new byte[length < 0 ? BUFFER_SIZE : SNIFF_BYTES];
+        int n = in.readNBytes(buf, 0, SNIFF_BYTES);
+        for (int i = 0; i < n; i += 1) {
+            if (buf[i] == 0) {
+                return false;
+            }
+        }
+        if (length >= 0) {
+            return true;
+        }
+        long total = n;
+        while (total <= threshold) {
+            int k = in.read(buf);
+            if (k < 0) {
+                return true;
+            }
+            total += k;
+        }
+        return false;
+    }
+
+    /** Return the configured BIG_FILE_THRESHOLD. */
+    private static long threshold() {
+        return Config.getInt(BIG_FILE_THRESHOLD, DEFAULT_THRESHOLD);
+    }
+}
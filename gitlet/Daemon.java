@@ -0,0 +1,192 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** A long-lived server running Gitlet commands for one repository, so
+ *  that a command pays neither for starting and warming up a JVM nor for
+ *  reopening packs and indices and rereading the stage.  The daemon
+ *  listens on the Unix domain socket SOCKET inside .gitlet; while it runs,
+ *  Main forwards every command given in that directory to it through
+ *  DaemonClient.
+ *
+ *  A request is the number of arguments followed by each argument in
+ *  modified UTF-8.  The reply is a series of frames, each a type byte and
+ *  a length followed by that many bytes of standard output (OUT) or
+ *  standard error (ERR), ending with an EXIT frame whose length is the
+ *  exit status.  Commands are run one at a time.  Before each, the daemon
+ *  checks whether another process has changed the stage, head, config or
+ *  indices since its last command, and if so rereads them. */
+class Daemon {
+
+    /** The socket on which the daemon listens. */
+    static final File SOCKET = join(Command.GITLET, "daemon.sock");
+    /** Frame type of standard output. */
+    static final int OUT = 1;
+    /** Frame type of standard error. */
+    static final int ERR = 2;
+    /** Frame type of the exit status. */
+    static final int EXIT = 3;
+
+    /** Serve commands on SOCKET until asked to stop with "daemon stop". */
+    static void serve() throws IOException {
+        if (SOCKET.exists()) {
+            if (DaemonClient.isRunning()) {
+                throw error("A Gitlet daemon is already running.");
+            }
+            SOCKET.delete();
+        }
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET.toPath()));
+            boolean running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    running = handle(client);
+                } catch (IOException excp) {
+                    /* The client went away; serve the next one. */
+                    _command = null;
+                }
+            }
+        } finally {
+            SOCKET.delete();
+        }
+    }
+
+    /** Run the command requested on CLIENT, sending back its output and
+     *  exit status.  Returns false iff the daemon should stop. */
+    private static boolean handle(SocketChannel client) throws IOException {
+        DataInputStream in =
+            new DataInputStream(Channels.newInputStream(client));
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Channels.newOutputStream(client)));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        if (Arrays.asList(args).equals(List.of("daemon", "stop"))) {
+            exit(out, 0);
+            return false;
+        }
+        String stamp = stamp();
+        if (_command == null || !stamp.equals(_stamp)) {
+            ObjectStore.closePacks();
+            IdIndex.closeCommits();
+            CommitGraph.close();
+            Reachability.close();
+            MessageIndex.close();
+            ChangedPaths.close();
+            Config.reload();
+            _command = new Command();
+        }
+        PrintStream stdout = System.out, stderr = System.err;
+        PrintStream frames = new PrintStream(
+            new BufferedOutputStream(new FrameStream(out, OUT)), false,
+            StandardCharsets.UTF_8);
+        PrintStream errors = new PrintStream(new FrameStream(out, ERR),
+            true, StandardCharsets.UTF_8);
+        int status;
+        System.setOut(frames);
+        System.setErr(errors);
+        try {
+            status = Main.run(args, _command);
+        } catch (IOException | RuntimeException excp) {
+            frames.flush();
+            excp.printStackTrace(errors);
+            _command = null;
+            status = 1;
+        } finally {
+            frames.flush();
+            errors.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        _stamp = stamp();
+        exit(out, status);
+        return true;
+    }
+
+    /** Send an EXIT frame with STATUS on OUT. */
+    private static void exit(DataOutputStream out, int status)
+        throws IOException {
+        out.writeByte(EXIT);
+        out.writeInt(status);
+        out.flush();
+    }
+
+    /** Return a summary of the size, modification time and inode of each
+     *  file whose contents the daemon keeps between commands, and of the
+     *  names of the packs, which changes whenever another process changes
+     *  one of them. */
+    private static String stamp() {
+        StringBuilder result = new StringBuilder();
+        File[] files = {
+            Stage.STAGE_FILE, FileIndex.INDEX_FILE,
+            join(Command.GITLET, "heads.txt"), Config.CONFIG_FILE,
+            IdIndex.COMMITS_INDEX, CommitGraph.GRAPH_FILE,
+            CommitGraph.LOOKUP_FILE, CommitGraph.TIME_FILE,
+            Reachability.BITMAPS_FILE, MessageIndex.LOG_FILE,
+            MessageIndex.INDEX_FILE, ChangedPaths.PATHS_FILE
+        };
+        for (File file : files) {
+            result.append(Arrays.toString(FileIndex.stat(file)));
+        }
+        result.append(plainFilenamesIn(ObjectStore.PACKS_DIR));
+        return result.toString();
+    }
+
+    /** A stream that sends the bytes written to it as frames of type TYPE
+     *  on an underlying stream. */
+    private static class FrameStream extends OutputStream {
+        /** A stream sending frames of type TYPE on OUT. */
+        FrameStream(DataOutputStream out, int type) {
+            _out = out;
+            _type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                _out.writeByte(_type);
+                _out.writeInt(len);
+                _out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            _out.flush();
+        }
+
+        /** The underlying stream. */
+        private final DataOutputStream _out;
+        /** Type of the frames sent. */
+        private final int _type;
+    }
+
+    /** The state of the repository kept from the last command, or null if
+     *  it must be read again. */
+    private static Command _command;
+    /** The stamp() at the end of the last command. */
+    private static String _stamp;
+}
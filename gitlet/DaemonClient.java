@@ -0,0 +1,98 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+/** The client side of the Gitlet daemon: forwards a command to a Daemon
+ *  serving the current directory and copies its output back.  It loads
+ *  none of the repository, so a forwarded command costs little more than
+ *  starting the JVM. */
+class DaemonClient {
+
+    /** Run the command ARGS in the daemon for the current repository,
+     *  copying its standard output and error to ours, and return its exit
+     *  status, or -1 if no daemon is running. */
+    static int forward(String[] args) {
+        SocketChannel channel = connect();
+        if (channel == null) {
+            return -1;
+        }
+        try (channel) {
+            DataOutputStream out =
+                new DataOutputStream(Channels.newOutputStream(channel));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel)));
+            byte[] buf = new byte[1 << 13];
+            while (true) {
+                int type = in.readUnsignedByte();
+                int len = in.readInt();
+                if (type == Daemon.EXIT) {
+                    System.out.flush();
+                    return len;
+                }
+                PrintStream dest = type == Daemon.ERR ? System.err
+                    : System.out;
+                while (len > 0) {
+                    int n = in.read(buf, 0, Math.min(len, buf.length));
+                    if (n < 0) {
+                        throw new IOException("daemon closed connection");
+                    }
+                    dest.write(buf, 0, n);
+                    len -= n;
+                }
+            }
+        } catch (IOException excp) {
+            System.err.println("Lost connection to Gitlet daemon: "
+                               + excp.getMessage());
+            return 1;
+        }
+    }
+
+    /** Return true iff a daemon is serving the current repository. */
+    static boolean isRunning() {
+        SocketChannel channel = connect();
+        if (channel == null) {
+            return false;
+        }
+        try {
+            channel.close();
+        } catch (IOException excp) {
+            /* Ignore: the daemon was there. */
+        }
+        return true;
+    }
+
+    /** Return a connection to the daemon for the current repository, or
+     *  null if there is none. */
+    private static SocketChannel connect() {
+        if (!Daemon.SOCKET.exists()) {
+            return null;
+        }
+        try {
+            SocketChannel channel =
+                SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                channel.connect(
+                    UnixDomainSocketAddress.of(Daemon.SOCKET.toPath()));
+                return channel;
+            } catch (IOException excp) {
+                channel.close();
+                return null;
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+}
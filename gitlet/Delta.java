@@ -0,0 +1,203 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static gitlet.Utils.*;
+
+/** Binary deltas between revisions of a file.  A delta names its base
+ *  blob and rebuilds a target from it with a list of instructions, each
+ *  either copying a run of bytes of the base or inserting bytes carried
+ *  in the delta itself.  Runs to copy are found as in rsync and Git's
+ *  diff-delta: the base is indexed by the hashes of its aligned BLOCK-byte
+ *  blocks, and a rolling hash over the target finds blocks it shares with
+ *  the base, which are then extended in both directions.
+ *
+ *  A delta records its depth: one more than that of its base, where a
+ *  whole blob has depth 0.  Keeping depth bounded bounds the number of
+ *  deltas applied to rebuild any blob. */
+class Delta {
+
+    /** Magic number at the start of every delta. */
+    static final int MAGIC = 0x4744;
+    /** Current delta format version. */
+    static final int VERSION = 1;
+    /** Greatest depth of a delta, which is stored in one byte. */
+    static final int MAX_DEPTH = 255;
+    /** Length of the blocks of the base that are indexed. */
+    private static final int BLOCK = 16;
+    /** Instruction copying from the base. */
+    private static final int COPY = 0;
+    /** Instruction inserting literal bytes. */
+    private static final int INSERT = 1;
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+    /** PRIME to the power BLOCK, for removing a byte from the hash. */
+    private static final int PRIME_POWER;
+
+    static {
+        int p = 1;
+        for (int i = 0; i < BLOCK; i += 1) {
+            p *= PRIME;
+        }
+        PRIME_POWER = p;
+    }
+
+    /** Return a delta of depth DEPTH, at most MAX_DEPTH, rebuilding
+     *  TARGET from BASE, the contents of blob BASEID, or null if the delta
+     *  would be no shorter than LIMIT bytes. */
+    static byte[] create(String baseId, int depth, byte[] base, byte[] target,
+                         int limit) {
+        if (depth > MAX_DEPTH) {
+            throw error("Delta depth %d exceeds %d.", depth, MAX_DEPTH);
+        }
+        if (base.length < BLOCK || target.length < BLOCK) {
+            return null;
+        }
+        int size = Integer.highestOneBit(base.length / BLOCK) * 4;
+        int mask = size - 1;
+        int[] table = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            table[i] = -1;
+        }
+        for (int i = base.length - base.length % BLOCK - BLOCK; i >= 0;
+             i -= BLOCK) {
+            table[hash(base, i) & mask] = i;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(MAGIC);
+            out.writeByte(VERSION);
+            writeId(out, baseId);
+            out.writeByte(depth);
+            out.writeInt(target.length);
+            int pending = 0, pos = 0;
+            int h = hash(target, 0);
+            while (pos + BLOCK <= target.length) {
+                int cand = table[h & mask];
+                if (cand >= 0 && equal(base, cand, target, pos)) {
+                    while (cand > 0 && pos > pending
+                           && base[cand - 1] == target[pos - 1]) {
+                        cand -= 1;
+                        pos -= 1;
+                    }
+                    int len = 0;
+                    while (cand + len < base.length
+                           && pos + len < target.length
+                           && base[cand + len] == target[pos + len]) {
+                        len += 1;
+                    }
+                    insert(out, target, pending, pos);
+                    out.writeByte(COPY);
+                    out.writeInt(cand);
+                    out.writeInt(len);
+                    pos += len;
+                    pending = pos;
+                    if (out.size() >= limit) {
+                        return null;
+                    }
+                    if (pos + BLOCK <= target.length) {
+                        h = hash(target, pos);
+                    }
+                } else {
+                    if (pos + BLOCK < target.length) {
+                        h = h * PRIME + target[pos + BLOCK]
+                            - PRIME_POWER * target[pos];
+                    }
+                    pos += 1;
+                }
+            }
+            insert(out, target, pending, target.length);
+            out.close();
+        } catch (IOException excp) {
+            throw error("Internal error writing delta.");
+        }
+        return bytes.size() < limit ? bytes.toByteArray() : null;
+    }
+
+    /** Return the id of the base of DELTA. */
+    static String base(byte[] delta) {
+        return ObjectStore.fromRawId(delta, 3);
+    }
+
+    /** Return the depth of DELTA. */
+    static int depth(byte[] delta) {
+        return delta[3 + ObjectStore.ID_BYTES] & 0xff;
+    }
+
+    /** Return the length of the contents DELTA rebuilds. */
+    static long length(byte[] delta) {
+        return ByteBuffer.wrap(delta, 4 + ObjectStore.ID_BYTES, 4).getInt()
+            & 0xffffffffL;
+    }
+
+    /** Return the contents rebuilt by applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        DataInputStream in =
+            new DataInputStream(new ByteArrayInputStream(delta));
+        try {
+            if (in.readUnsignedShort() != MAGIC
+                || in.readUnsignedByte() != VERSION) {
+                throw error("Unknown delta format.");
+            }
+            readId(in);
+            in.readUnsignedByte();
+            byte[] result = new byte[in.readInt()];
+            int pos = 0;
+            for (int op = in.read(); op >= 0; op = in.read()) {
+                if (op == COPY) {
+                    int offset = in.readInt(), len = in.readInt();
+                    System.arraycopy(base, offset, result, pos, len);
+                    pos += len;
+                } else if (op == INSERT) {
+                    int len = in.readInt();
+                    in.readFully(result, pos, len);
+                    pos += len;
+                } else {
+                    throw error("Corrupt delta.");
+                }
+            }
+            if (pos != result.length) {
+                throw error("Corrupt delta.");
+            }
+            return result;
+        } catch (IOException | IndexOutOfBoundsException excp) {
+            throw error("Corrupt delta.");
+        }
+    }
+
+    /** Write to OUT an instruction inserting bytes FROM .. TO-1 of
+     *  TARGET, if there are any. */
+    private static void insert(DataOutputStream out, byte[] target,
+                               int from, int to) throws IOException {
+        if (from < to) {
+            out.writeByte(INSERT);
+            out.writeInt(to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** Return true iff the BLOCK bytes of A at I equal those of B at J. */
+    private static boolean equal(byte[] a, int i, byte[] b, int j) {
+        for (int k = 0; k < BLOCK; k += 1) {
+            if (a[i + k] != b[j + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the rolling hash of the BLOCK bytes of A at I. */
+    private static int hash(byte[] a, int i) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k += 1) {
+            h = h * PRIME + a[i + k];
+        }
+        return h;
+    }
+}
@@ -0,0 +1,63 @@
+package gitlet;
+
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Delta. */
+public class DeltaTest {
+
+    /** An arbitrary base blob id. */
+    private static final String BASE_ID =
+        "8d2792dd9c16fcc6c3c62d40a0adccc14895bbcd";
+
+    /** Return N random bytes drawn from RAND. */
+    private static byte[] random(Random rand, int n) {
+        byte[] result = new byte[n];
+        rand.nextBytes(result);
+        return result;
+    }
+
+    @Test
+    public void testEdits() {
+        Random rand = new Random(7);
+        byte[] base = random(rand, 10000);
+        byte[] target = new byte[base.length + 100];
+        System.arraycopy(base, 0, target, 0, 3000);
+        System.arraycopy(random(rand, 150), 0, target, 3000, 150);
+        System.arraycopy(base, 3050, target, 3150, base.length - 3050);
+        byte[] delta = Delta.create(BASE_ID, 3, base, target,
+                                    target.length);
+        assertNotNull(delta);
+        assertTrue(delta.length < 400);
+        assertEquals(BASE_ID, Delta.base(delta));
+        assertEquals(3, Delta.depth(delta));
+        assertEquals(target.length, Delta.length(delta));
+        assertArrayEquals(target, Delta.apply(base, delta));
+    }
+
+    @Test
+    public void testMaxDepth() {
+        byte[] base = random(new Random(3), 1000);
+        byte[] delta = Delta.create(BASE_ID, Delta.MAX_DEPTH, base, base,
+                                    base.length);
+        assertEquals(Delta.MAX_DEPTH, Delta.depth(delta));
+        assertArrayEquals(base, Delta.apply(base, delta));
+        try {
+            Delta.create(BASE_ID, Delta.MAX_DEPTH + 1, base, base,
+                         base.length);
+            fail("depth not checked");
+        } catch (GitletException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testLimit() {
+        Random rand = new Random(5);
+        byte[] base = random(rand, 1000), target = random(rand, 1000);
+        assertNull(Delta.create(BASE_ID, 1, base, target, target.length));
+        assertNull(Delta.create(BASE_ID, 1, new byte[4], target, 2000));
+    }
+}
@@ -2,12 +2,16 @@ package gitlet;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 
 import java.io.IOException;
 import java.nio.file.InvalidPathException;
@@ -17,15 +21,76 @@ import static java.lang.Math.max;
 /** A comparison of two sequences of strings.  After executing setSequences to
  *  initialize the data, methods allow computing longest common sequences
  *  and differences in the form of edits needed to convert one sequence to the
- *  next.
+ *  next.  The common subsequence is found by one of several Algorithms,
+ *  MYERS by default.  Lines are first interned: each distinct line gets
+ *  a small integer id, shared by both sequences, so that the algorithms
+ *  compare ints rather than strings.
  *  @author P. N. Hilfinger */
 public class Diff {
 
+    /** Config key naming the algorithm used by gitlet diff. */
+    static final String ALGORITHM = "diff.algorithm";
+
+    /** The ways of finding a longest common subsequence. */
+    enum Algorithm {
+        /** Memoized recursion over a table of the lengths of the longest
+         *  common subsequences of all pairs of prefixes: quadratic in both
+         *  time and space. */
+        LCS,
+        /** Myers' O((N+M)D) algorithm, where D is the size of the
+         *  shortest edit, in its linear-space form: find the middle snake
+         *  of an optimal edit path by searching from both ends at once,
+         *  then recurse on the parts before and after it. */
+        MYERS,
+        /** Histogram diff, as in JGit: a refinement of patience diff that
+         *  anchors on the common run containing the line that occurs
+         *  least often in the first sequence, then recurses on the parts
+         *  before and after it.  Unlike MYERS it does not match the many
+         *  blank and brace-only lines of a file against each other, which
+         *  gives more readable hunks for code.  Parts with no line
+         *  occurring at most MAX_CHAIN times fall back to MYERS. */
+        HISTOGRAM;
+
+        /** Return the algorithm called NAME, ignoring case, or null if
+         *  there is none. */
+        static Algorithm forName(String name) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.name().equalsIgnoreCase(name.trim())) {
+                    return algorithm;
+                }
+            }
+            return null;
+        }
+
+        /** Return the algorithm selected for gitlet diff in this
+         *  repository by diff.algorithm (myers, histogram or lcs; myers
+         *  by default). */
+        static Algorithm configured() {
+            String name = Config.get(ALGORITHM, "myers");
+            Algorithm algorithm = forName(name);
+            if (algorithm == null) {
+                throw Utils.error("Unknown %s: %s", ALGORITHM, name);
+            }
+            return algorithm;
+        }
+    }
+
+    /** A comparison using the MYERS algorithm. */
+    public Diff() {
+        this(Algorithm.MYERS);
+    }
+
+    /** A comparison using ALGORITHM. */
+    public Diff(Algorithm algorithm) {
+        _algorithm = algorithm;
+    }
+
     /** Set the sequences currently being compared to the contents
      *  of SEQ1 and SEQ2 (as delivered by their iterators). */
     public void setSequences(Collection<String> seq1, Collection<String> seq2) {
         _lines1 = new ArrayList<>(seq1);
         _lines2 = new ArrayList<>(seq2);
+        _ids1 = _ids2 = null;
         _lls = null;
         _todo = null;
     }
@@ -47,10 +112,28 @@ public class Diff {
                  excp) {
             _lines2 = Collections.emptyList();
         }
+        _ids1 = _ids2 = null;
         _lls = null;
         _todo = null;
     }
 
+    /** Return the lines of CONTENTS, decoded as UTF-8, split as by
+     *  Files.readAllLines. */
+    public static List<String> lines(byte[] contents) {
+        ArrayList<String> result = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new StringReader(
+                new String(contents, StandardCharsets.UTF_8)));
+        try {
+            for (String line = reader.readLine(); line != null;
+                 line = reader.readLine()) {
+                result.add(line);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
     /** Return the first of the current sequences. */
     public List<String> sequence1() {
         return _lines1;
@@ -75,6 +158,7 @@ public class Diff {
      *  items, respectively, of the current data sequences. */
     public int lls(int k1, int k2) {
         checkData();
+        intern();
         if (_lls == null) {
             _lls = new int[_lines1.size() + 1][_lines2.size() + 1];
             for (int[] row : _lls) {
@@ -96,8 +180,7 @@ public class Diff {
                 } else {
                     switch (_llsState) {
                     case 0:
-                        if (_lines1.get(_llsTop1 - 1)
-                            .equals(_lines2.get(_llsTop2 - 1))) {
+                        if (same(_llsTop1 - 1, _llsTop2 - 1)) {
                             push(_llsTop1, _llsTop2, 4);
                             push(_llsTop1 - 1, _llsTop2 - 1, 0);
                         } else {
@@ -141,10 +224,7 @@ public class Diff {
      *  content. */
     public boolean sequencesEqual() {
         checkData();
-        if (_lines1.size() != _lines2.size()) {
-            return false;
-        }
-        return lls(_lines1.size(), _lines2.size()) == _lines1.size();
+        return _lines1.equals(_lines2);
     }
 
     /** Return an array containing the int values of the items in LIST. */
@@ -165,6 +245,14 @@ public class Diff {
      *  first file (0-based), si2 is the starting position in the second
      *  file, and Li is the length of the subsequence. */
     public int[] commonSubsequence() {
+        checkData();
+        intern();
+        if (_algorithm != Algorithm.LCS) {
+            ArrayList<Integer> result = new ArrayList<>();
+            common(0, _lines1.size(), 0, _lines2.size(), _algorithm,
+                   result);
+            return toIntArr(result);
+        }
         ArrayDeque<Integer> resultList = new ArrayDeque<>();
 
         int k1, k2;
@@ -223,6 +311,240 @@ public class Diff {
         return toIntArr(result);
     }
 
+    /** Append to RESULT, in the form returned by commonSubsequence, a
+     *  common subsequence of lines [LO1 .. HI1 - 1] of the first sequence
+     *  and [LO2 .. HI2 - 1] of the second found by ALGORITHM, which is
+     *  MYERS or HISTOGRAM.  The common prefix and suffix of the ranges
+     *  are matched first, and the algorithm applied to what is left. */
+    private void common(int lo1, int hi1, int lo2, int hi2,
+                        Algorithm algorithm, List<Integer> result) {
+        int prefix;
+        prefix = 0;
+        while (lo1 + prefix < hi1 && lo2 + prefix < hi2
+               && same(lo1 + prefix, lo2 + prefix)) {
+            prefix += 1;
+        }
+        addMatch(lo1, lo2, prefix, result);
+        lo1 += prefix; lo2 += prefix;
+        int suffix;
+        suffix = 0;
+        while (hi1 - suffix > lo1 && hi2 - suffix > lo2
+               && same(hi1 - suffix - 1, hi2 - suffix - 1)) {
+            suffix += 1;
+        }
+        hi1 -= suffix; hi2 -= suffix;
+        if (lo1 < hi1 && lo2 < hi2) {
+            int[] run = null;
+            if (algorithm == Algorithm.HISTOGRAM) {
+                run = rarestRun(lo1, hi1, lo2, hi2);
+            }
+            if (run != null) {
+                common(lo1, run[0], lo2, run[1], algorithm, result);
+                addMatch(run[0], run[1], run[2], result);
+                common(run[0] + run[2], hi1, run[1] + run[2], hi2,
+                       algorithm, result);
+            } else {
+                int[] split = middleSnake(lo1, hi1, lo2, hi2);
+                if (split != null) {
+                    common(lo1, split[0], lo2, split[1], Algorithm.MYERS,
+                           result);
+                    common(split[0], hi1, split[1], hi2, Algorithm.MYERS,
+                           result);
+                }
+            }
+        }
+        addMatch(hi1, hi2, suffix, result);
+    }
+
+    /** Return the common run {k1, k2, len} of lines [LO1 .. HI1 - 1] of
+     *  the first sequence and [LO2 .. HI2 - 1] of the second on which
+     *  histogram diff splits them: among the maximal runs through a pair
+     *  of equal lines, one whose rarest line occurs least often in the
+     *  first range, the longest such, and the first of those.  Returns
+     *  null if every line common to the ranges occurs more than MAX_CHAIN
+     *  times in the first. */
+    private int[] rarestRun(int lo1, int hi1, int lo2, int hi2) {
+        for (int k = hi1 - 1; k >= lo1; k -= 1) {
+            int id = _ids1[k];
+            _next[k] = _head[id];
+            _head[id] = k;
+            _count[id] += 1;
+        }
+        int[] best = null;
+        int bestCount = MAX_CHAIN + 1;
+        int k2 = lo2;
+        while (k2 < hi2) {
+            int id = _ids2[k2];
+            int after = k2 + 1;
+            if (_count[id] > 0 && _count[id] <= bestCount) {
+                for (int k1 = _head[id]; k1 != -1; k1 = _next[k1]) {
+                    int s1 = k1, s2 = k2, e1 = k1 + 1, e2 = k2 + 1;
+                    int rarest = _count[id];
+                    while (s1 > lo1 && s2 > lo2
+                           && _ids1[s1 - 1] == _ids2[s2 - 1]) {
+                        s1 -= 1; s2 -= 1;
+                        rarest = Math.min(rarest, _count[_ids1[s1]]);
+                    }
+                    while (e1 < hi1 && e2 < hi2 && _ids1[e1] == _ids2[e2]) {
+                        rarest = Math.min(rarest, _count[_ids1[e1]]);
+                        e1 += 1; e2 += 1;
+                    }
+                    if (rarest < bestCount
+                        || (best != null && rarest == bestCount
+                            && e1 - s1 > best[2])) {
+                        best = new int[] { s1, s2, e1 - s1 };
+                        bestCount = rarest;
+                    }
+                    after = max(after, e2);
+                }
+            }
+            k2 = after;
+        }
+        for (int k = lo1; k < hi1; k += 1) {
+            _head[_ids1[k]] = -1;
+            _count[_ids1[k]] = 0;
+        }
+        return best;
+    }
+
+    /** Return the point {x, y} at which a shortest edit path from
+     *  (LO1, LO2) to (HI1, HI2) crosses its middle: the end of the snake
+     *  where the paths searched forward from the start and backward from
+     *  the end first overlap.  Both ranges must be non-empty and differ in
+     *  their first and last lines, so that the point lies strictly inside
+     *  the edit graph.  Returns null if the ranges have no line in
+     *  common. */
+    private int[] middleSnake(int lo1, int hi1, int lo2, int hi2) {
+        int n = hi1 - lo1, m = hi2 - lo2;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int[] v1 = new int[2 * maxD + 2];
+        int[] v2 = new int[2 * maxD + 2];
+        Arrays.fill(v1, -1);
+        Arrays.fill(v2, -1);
+        v1[offset + 1] = 0;
+        v2[offset + 1] = 0;
+        int delta = n - m;
+        boolean front = delta % 2 != 0;
+        int start1 = 0, end1 = 0, start2 = 0, end2 = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k1 = -d + start1; k1 <= d - end1; k1 += 2) {
+                int i1 = offset + k1;
+                int x1;
+                if (k1 == -d || (k1 != d && v1[i1 - 1] < v1[i1 + 1])) {
+                    x1 = v1[i1 + 1];
+                } else {
+                    x1 = v1[i1 - 1] + 1;
+                }
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && same(lo1 + x1, lo2 + y1)) {
+                    x1 += 1; y1 += 1;
+                }
+                v1[i1] = x1;
+                if (x1 > n) {
+                    end1 += 2;
+                } else if (y1 > m) {
+                    start1 += 2;
+                } else if (front) {
+                    int i2 = offset + delta - k1;
+                    if (i2 >= 0 && i2 < v1.length && v2[i2] != -1
+                        && x1 >= n - v2[i2]) {
+                        return new int[] { lo1 + x1, lo2 + y1 };
+                    }
+                }
+            }
+            for (int k2 = -d + start2; k2 <= d - end2; k2 += 2) {
+                int i2 = offset + k2;
+                int x2;
+                if (k2 == -d || (k2 != d && v2[i2 - 1] < v2[i2 + 1])) {
+                    x2 = v2[i2 + 1];
+                } else {
+                    x2 = v2[i2 - 1] + 1;
+                }
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m
+                       && same(hi1 - x2 - 1, hi2 - y2 - 1)) {
+                    x2 += 1; y2 += 1;
+                }
+                v2[i2] = x2;
+                if (x2 > n) {
+                    end2 += 2;
+                } else if (y2 > m) {
+                    start2 += 2;
+                } else if (!front) {
+                    int i1 = offset + delta - k2;
+                    if (i1 >= 0 && i1 < v1.length && v1[i1] != -1) {
+                        int x1 = v1[i1];
+                        int y1 = offset + x1 - i1;
+                        if (x1 >= n - x2) {
+                            return new int[] { lo1 + x1, lo2 + y1 };
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Append to RESULT a common run of LEN lines starting at line K1 of
+     *  the first sequence and K2 of the second, joining it to the last run
+     *  if they are adjacent. */
+    private static void addMatch(int k1, int k2, int len,
+                                 List<Integer> result) {
+        if (len == 0) {
+            return;
+        }
+        int n = result.size();
+        if (n > 0 && result.get(n - 3) + result.get(n - 1) == k1
+            && result.get(n - 2) + result.get(n - 1) == k2) {
+            result.set(n - 1, result.get(n - 1) + len);
+        } else {
+            result.add(k1);
+            result.add(k2);
+            result.add(len);
+        }
+    }
+
+    /** Return true iff line K1 of the first sequence equals line K2 of the
+     *  second. */
+    private boolean same(int k1, int k2) {
+        return _ids1[k1] == _ids2[k2];
+    }
+
+    /** Set _ids1 and _ids2 to the ids of the lines of the current
+     *  sequences, numbering the distinct lines from 0, if not already
+     *  done, and size the work arrays of rarestRun to match. */
+    private void intern() {
+        if (_ids1 != null) {
+            return;
+        }
+        HashMap<String, Integer> ids =
+            new HashMap<>(2 * (_lines1.size() + _lines2.size()) + 1);
+        _ids1 = intern(_lines1, ids);
+        _ids2 = intern(_lines2, ids);
+        if (_algorithm == Algorithm.HISTOGRAM) {
+            _head = new int[ids.size()];
+            Arrays.fill(_head, -1);
+            _count = new int[ids.size()];
+            _next = new int[_ids1.length];
+        }
+    }
+
+    /** Return the ids of LINES in IDS, adding new ids for lines not yet
+     *  in it. */
+    private static int[] intern(List<String> lines,
+                                HashMap<String, Integer> ids) {
+        int[] result = new int[lines.size()];
+        int k;
+        k = 0;
+        for (String line : lines) {
+            Integer id = ids.putIfAbsent(line, ids.size());
+            result[k] = id == null ? ids.size() - 1 : id;
+            k += 1;
+        }
+        return result;
+    }
+
     /** Raise an exception if there are no current data sequences for
      *  comparison. */
     private void checkData() {
@@ -259,8 +581,25 @@ public class Diff {
         return _todop <= 0;
     }
 
+    /** The algorithm finding common subsequences. */
+    private final Algorithm _algorithm;
+
     /** The sequences being compared. */
     private List<String> _lines1, _lines2;
+    /** The ids of the lines of _lines1 and _lines2, or null if not yet
+     *  interned. */
+    private int[] _ids1, _ids2;
+
+    /** Largest number of times a line may occur in the first range for
+     *  histogram diff to anchor on it. */
+    private static final int MAX_CHAIN = 64;
+    /** For rarestRun, by line id: the first position of the line in the
+     *  first range, or -1, and the number of times it occurs there.  Both
+     *  are reset after each use. */
+    private int[] _head, _count;
+    /** For rarestRun, by position in the first sequence: the next
+     *  position of the same line in the range, or -1. */
+    private int[] _next;
 
     /** The memo table for longest common subsequence.  _lls[a][b] contains the
      *  length of the longest common sequence of the prefixes of the current
@@ -0,0 +1,168 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Diff. */
+public class DiffTest {
+
+    /** Return a list of COUNT random lines drawn from RAND, each one of
+     *  KINDS different lines. */
+    private static List<String> random(Random rand, int count, int kinds) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < count; i += 1) {
+            result.add("line " + rand.nextInt(kinds));
+        }
+        return result;
+    }
+
+    /** Return DIFF's common subsequence, after checking that it is a
+     *  common subsequence of its sequences. */
+    private static int[] checkCommon(Diff diff) {
+        int[] common = diff.commonSubsequence();
+        int e1 = 0, e2 = 0;
+        for (int k = 0; k < common.length; k += 3) {
+            assertTrue(common[k] >= e1 && common[k + 1] >= e2);
+            assertTrue(common[k + 2] > 0);
+            for (int i = 0; i < common[k + 2]; i += 1) {
+                assertEquals(diff.get1(common[k] + i),
+                             diff.get2(common[k + 1] + i));
+            }
+            e1 = common[k] + common[k + 2];
+            e2 = common[k + 1] + common[k + 2];
+        }
+        assertTrue(e1 <= diff.sequence1().size());
+        assertTrue(e2 <= diff.sequence2().size());
+        return common;
+    }
+
+    /** Return the number of lines in COMMON, a common subsequence. */
+    private static int length(int[] common) {
+        int n = 0;
+        for (int k = 0; k < common.length; k += 3) {
+            n += common[k + 2];
+        }
+        return n;
+    }
+
+    /** Check that the edit found by DIFF turns its first sequence into its
+     *  second. */
+    private static void checkEdit(Diff diff) {
+        int[] edits = diff.diffs();
+        List<String> result = new ArrayList<>();
+        int i = 0;
+        for (int k = 0; k < edits.length; k += 4) {
+            assertTrue(edits[k + 1] > 0 || edits[k + 3] > 0);
+            while (i < edits[k]) {
+                result.add(diff.get1(i));
+                i += 1;
+            }
+            i += edits[k + 1];
+            result.addAll(diff.sequence2()
+                          .subList(edits[k + 2], edits[k + 2] + edits[k + 3]));
+        }
+        result.addAll(diff.sequence1().subList(i, diff.sequence1().size()));
+        assertEquals(diff.sequence2(), result);
+    }
+
+    /** Return a comparison of A and B by ALGORITHM. */
+    private static Diff diff(Diff.Algorithm algorithm, List<String> a,
+                             List<String> b) {
+        Diff diff = new Diff(algorithm);
+        diff.setSequences(a, b);
+        return diff;
+    }
+
+    @Test
+    public void testMyersIsLongest() {
+        Random rand = new Random(11);
+        for (int trial = 0; trial < 200; trial += 1) {
+            List<String> a = random(rand, rand.nextInt(40), 6),
+                b = random(rand, rand.nextInt(40), 6);
+            Diff myers = diff(Diff.Algorithm.MYERS, a, b);
+            int[] common = checkCommon(myers);
+            assertEquals(diff(Diff.Algorithm.LCS, a, b).lls(),
+                         length(common));
+            checkEdit(myers);
+        }
+    }
+
+    @Test
+    public void testMyersEdges() {
+        List<String> none = List.of(), abc = List.of("a", "b", "c");
+        assertArrayEquals(new int[0],
+                          diff(Diff.Algorithm.MYERS, none, none).diffs());
+        assertArrayEquals(new int[] { 0, 3, 0, 0 },
+                          diff(Diff.Algorithm.MYERS, abc, none).diffs());
+        assertArrayEquals(new int[] { 0, 0, 0, 3 },
+                          diff(Diff.Algorithm.MYERS, none, abc).diffs());
+        Diff same = diff(Diff.Algorithm.MYERS, abc, abc);
+        assertTrue(same.sequencesEqual());
+        assertArrayEquals(new int[] { 0, 0, 3 }, same.commonSubsequence());
+        assertArrayEquals(new int[] { 1, 1, 1, 1 },
+                          diff(Diff.Algorithm.MYERS, abc,
+                               List.of("a", "x", "c")).diffs());
+    }
+
+    @Test
+    public void testMyersLarge() {
+        Random rand = new Random(13);
+        List<String> a = random(rand, 20000, 1000);
+        List<String> b = new ArrayList<>(a);
+        for (int i = 0; i < 50; i += 1) {
+            b.set(i * 400 + rand.nextInt(400), "changed " + i);
+        }
+        Diff myers = diff(Diff.Algorithm.MYERS, a, b);
+        assertEquals(a.size() - 50, length(checkCommon(myers)));
+        checkEdit(myers);
+    }
+
+    @Test
+    public void testHistogramIsValid() {
+        Random rand = new Random(17);
+        for (int trial = 0; trial < 200; trial += 1) {
+            List<String> a = random(rand, rand.nextInt(40), 6),
+                b = random(rand, rand.nextInt(40), 6);
+            Diff histogram = diff(Diff.Algorithm.HISTOGRAM, a, b);
+            checkCommon(histogram);
+            checkEdit(histogram);
+        }
+        List<String> a = random(rand, 20000, 5000);
+        List<String> b = new ArrayList<>(a.subList(100, a.size()));
+        b.addAll(a.subList(0, 100));
+        checkEdit(diff(Diff.Algorithm.HISTOGRAM, a, b));
+    }
+
+    @Test
+    public void testHistogramAnchorsOnRareLines() {
+        List<String> a = List.of("a();", "}", "}", "b();", "}", "}"),
+            b = List.of("b();", "}", "}", "a();", "}", "}");
+        assertArrayEquals(new int[] { 1, 1, 2, 4, 4, 2 },
+                          diff(Diff.Algorithm.MYERS, a, b)
+                          .commonSubsequence());
+        assertArrayEquals(new int[] { 3, 0, 1, 4, 4, 2 },
+                          diff(Diff.Algorithm.HISTOGRAM, a, b)
+                          .commonSubsequence());
+    }
+
+    @Test
+    public void testAlgorithmNames() {
+        assertEquals(Diff.Algorithm.HISTOGRAM,
+                     Diff.Algorithm.forName("Histogram"));
+        assertEquals(Diff.Algorithm.MYERS, Diff.Algorithm.forName("myers"));
+        assertNull(Diff.Algorithm.forName("patience"));
+    }
+
+    @Test
+    public void testLines() {
+        assertEquals(Arrays.asList("a", "b", ""),
+                     Diff.lines("a\nb\n\n".getBytes()));
+        assertEquals(Arrays.asList("a", "b"),
+                     Diff.lines("a\r\nb".getBytes()));
+    }
+}
@@ -0,0 +1,264 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static gitlet.Utils.*;
+
+/** A persistent cache of the content hashes of files in the working
+ *  directory, kept next to the stage.  For each file it records the size,
+ *  modification time and inode number seen when the file was last hashed,
+ *  so that the file is read and hashed again only when one of those
+ *  changes.  As in Git, an entry whose modification time is not older than
+ *  the index file itself is "racy" (the file may have changed again within
+ *  the same timestamp tick) and is always rehashed. */
+class FileIndex {
+
+    /** File in which the index is saved. */
+    static final File INDEX_FILE = join(Command.STAGE_DIR, "index");
+
+    /** Magic number at the start of the index file. */
+    private static final int MAGIC = 0x4746;
+    /** Current index format version. */
+    private static final int VERSION = 1;
+
+    /** An empty index. */
+    FileIndex() {
+        _entries = new TreeMap<>();
+        _racyTime = Long.MIN_VALUE;
+    }
+
+    /** Return the saved index, or an empty one if there is none. */
+    static FileIndex load() {
+        FileIndex index = new FileIndex();
+        if (!INDEX_FILE.isFile()) {
+            return index;
+        }
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(readContents(INDEX_FILE)));
+        try {
+            if (in.readUnsignedShort() != MAGIC
+                || in.readUnsignedByte() != VERSION) {
+                return index;
+            }
+            int n = in.readInt();
+            for (int i = 0; i < n; i += 1) {
+                String name = readString(in);
+                Entry e = new Entry(in.readLong(), in.readLong(),
+                                    in.readLong(), readId(in));
+                index._entries.put(name, e);
+            }
+            index._racyTime = Files.getLastModifiedTime(INDEX_FILE.toPath())
+                .to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            return new FileIndex();
+        }
+        return index;
+    }
+
+    /** Write this index to INDEX_FILE if it has changed since it was
+     *  loaded. */
+    void save() {
+        if (!_dirty || !Command.STAGE_DIR.isDirectory()) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                writeString(out, e.getKey());
+                out.writeLong(e.getValue().size);
+                out.writeLong(e.getValue().mtime);
+                out.writeLong(e.getValue().inode);
+                writeId(out, e.getValue().id);
+            }
+            out.close();
+        } catch (IOException excp) {
+            throw error("Internal error serializing index.");
+        }
+        writeContents(INDEX_FILE, bytes.toByteArray());
+        _dirty = false;
+        try {
+            _racyTime = Files.getLastModifiedTime(INDEX_FILE.toPath())
+                .to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            _racyTime = Long.MIN_VALUE;
+        }
+    }
+
+    /** Return the SHA-1 hash of the contents of the working file NAME, or
+     *  null if it does not exist.  The file is read only if its size,
+     *  modification time or inode differ from those cached. */
+    String hash(String name) {
+        return hashAll(Collections.singletonList(name)).get(name);
+    }
+
+    /** Return the names of all plain files in the working directory, in
+     *  lexicographic order, checking the directory entries in parallel. */
+    static List<String> workingFiles() {
+        String[] names = Command.CWD.list();
+        if (names == null) {
+            return Collections.emptyList();
+        }
+        boolean[] plain = new boolean[names.length];
+        Parallel.forEach(names.length,
+            i -> plain[i] = join(Command.CWD, names[i]).isFile());
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < names.length; i += 1) {
+            if (plain[i]) {
+                result.add(names[i]);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Return a map from each of NAMES to the SHA-1 hash of the contents
+     *  of that working file, omitting files that do not exist.  Files are
+     *  checked and, where their stat data changed, hashed in parallel. */
+    TreeMap<String, String> hashAll(Collection<String> names) {
+        return hashAll(names, Utils::fileSha1);
+    }
+
+    /** As for hashAll(NAMES), but computing the hash of each file whose
+     *  stat data changed with HASHER, which may also store the file. */
+    TreeMap<String, String> hashAll(Collection<String> names,
+                                    Function<File, String> hasher) {
+        String[] files = names.toArray(new String[0]);
+        long[][] stats = new long[files.length][];
+        String[] ids = new String[files.length];
+        boolean[] fresh = new boolean[files.length];
+        Parallel.forEach(files.length, i -> {
+            File file = join(Command.CWD, files[i]);
+            stats[i] = stat(file);
+            if (stats[i] == null) {
+                return;
+            }
+            Entry e = _entries.get(files[i]);
+            if (e != null && e.size == stats[i][0] && e.mtime == stats[i][1]
+                && e.inode == stats[i][2] && e.mtime < _racyTime) {
+                ids[i] = e.id;
+            } else {
+                ids[i] = hasher.apply(file);
+                fresh[i] = true;
+            }
+        });
+        TreeMap<String, String> result = new TreeMap<>();
+        for (int i = 0; i < files.length; i += 1) {
+            if (stats[i] == null) {
+                forget(files[i]);
+                continue;
+            }
+            if (fresh[i]) {
+                _entries.put(files[i], new Entry(stats[i][0], stats[i][1],
+                                                 stats[i][2], ids[i]));
+                _dirty = true;
+            }
+            result.put(files[i], ids[i]);
+        }
+        return result;
+    }
+
+    /** Record that the working file NAME has just been written with the
+     *  contents of blob ID. */
+    void record(String name, String id) {
+        long[] stat = stat(join(Command.CWD, name));
+        if (stat == null) {
+            forget(name);
+        } else {
+            _entries.put(name, new Entry(stat[0], stat[1], stat[2], id));
+            _dirty = true;
+        }
+    }
+
+    /** Remove any entry for NAME. */
+    void forget(String name) {
+        if (_entries.remove(name) != null) {
+            _dirty = true;
+        }
+    }
+
+    /** Return the size, modification time in nanoseconds and inode number
+     *  of FILE, or null if it is not a plain file.  The inode is 0 where
+     *  the file system does not report one. */
+    static long[] stat(File file) {
+        Path path = file.toPath();
+        try {
+            Map<String, Object> attrs = Files.readAttributes(path,
+                "unix:size,lastModifiedTime,ino,isRegularFile");
+            if (!(Boolean) attrs.get("isRegularFile")) {
+                return null;
+            }
+            return new long[] {
+                (Long) attrs.get("size"),
+                ((FileTime) attrs.get("lastModifiedTime"))
+                    .to(TimeUnit.NANOSECONDS),
+                (Long) attrs.get("ino")
+            };
+        } catch (UnsupportedOperationException excp) {
+            try {
+                BasicFileAttributes attrs =
+                    Files.readAttributes(path, BasicFileAttributes.class);
+                if (!attrs.isRegularFile()) {
+                    return null;
+                }
+                return new long[] {
+                    attrs.size(),
+                    attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS), 0
+                };
+            } catch (IOException excp2) {
+                return null;
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** The cached state of one working file. */
+    private static class Entry {
+        /** An entry for a file of SIZE bytes modified at MTIME with inode
+         *  INODE, whose contents hash to ID. */
+        Entry(long size, long mtime, long inode, String id) {
+            this.size = size;
+            this.mtime = mtime;
+            this.inode = inode;
+            this.id = id;
+        }
+
+        /** File size in bytes. */
+        private final long size;
+        /** Modification time in nanoseconds. */
+        private final long mtime;
+        /** Inode number, or 0. */
+        private final long inode;
+        /** SHA-1 hash of the contents. */
+        private final String id;
+    }
+
+    /** Entries by file name. */
+    private TreeMap<String, Entry> _entries;
+    /** Modification time of the saved index; entries modified at or after
+     *  this time are rehashed. */
+    private long _racyTime;
+    /** True iff this index differs from the saved one. */
+    private boolean _dirty;
+}
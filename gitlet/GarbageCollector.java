@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static gitlet.Utils.*;
+
+/** Mark-and-sweep collection of unreachable objects.  The commits
+ *  reachable from the branch tips are marked, one walk per tip run in
+ *  parallel, together with their trees and files; the walks share their
+ *  marks, so each commit and subtree is visited once whichever tip
+ *  reaches it first.  Files on the stage are marked as well, as is the
+ *  chain of delta bases of every marked file.  Every other object is
+ *  then deleted, unless it was written within the grace period set by
+ *  gc.grace, in seconds, which protects the objects of a command running
+ *  at the same time that has not yet made them reachable.
+ *
+ *  The commit graph and the other files derived from the set of commits
+ *  would still list the deleted commits, so if any are deleted those
+ *  files are removed, to be rebuilt from the remaining commits. */
+class GarbageCollector {
+
+    /** Config key giving the grace period, in seconds. */
+    static final String GRACE = "gc.grace";
+
+    /** Default for GRACE: two weeks, as in Git. */
+    private static final int DEFAULT_GRACE = 14 * 24 * 60 * 60;
+
+    /** Delete the objects not reachable from the branches or STAGE,
+     *  returning the number of bytes freed. */
+    static long collect(Stage stage) {
+        Set<String> commits = ConcurrentHashMap.newKeySet();
+        Set<String> trees = ConcurrentHashMap.newKeySet();
+        Set<String> blobs = ConcurrentHashMap.newKeySet();
+        List<String> tips = new ArrayList<>();
+        List<String> branches = plainFilenamesIn(Command.BRANCHES_DIR);
+        if (branches != null) {
+            for (String branch : branches) {
+                tips.add(readContentsAsString(
+                    join(Command.BRANCHES_DIR, branch)));
+            }
+        }
+        Parallel.forEach(tips.size(),
+                         i -> mark(tips.get(i), commits, trees, blobs));
+        blobs.addAll(stage.getAdd().values());
+        blobs.addAll(stage.getDelete().values());
+        blobs.addAll(stage.getNonCategorized().values());
+        List<String> files = new ArrayList<>(blobs);
+        Parallel.forEach(files.size(), i -> {
+            String base = ObjectStore.deltaBase(files.get(i));
+            while (base != null && blobs.add(base)) {
+                base = ObjectStore.deltaBase(base);
+            }
+        });
+        List<String> unreachable =
+            new ArrayList<>(ObjectStore.ids(ObjectStore.Kind.COMMIT));
+        unreachable.removeAll(commits);
+        Set<String> live = ConcurrentHashMap.newKeySet();
+        live.addAll(commits);
+        live.addAll(trees);
+        live.addAll(blobs);
+        long grace = Config.getInt(GRACE, DEFAULT_GRACE) * 1000L;
+        long freed = ObjectStore.prune(live,
+                                       System.currentTimeMillis() - grace);
+        for (String id : unreachable) {
+            if (!ObjectStore.contains(ObjectStore.Kind.COMMIT, id)) {
+                CommitGraph.rebuild();
+                break;
+            }
+        }
+        return freed;
+    }
+
+    /** Mark the commits reachable from commit TIP in COMMITS, and their
+     *  trees and files in TREES and BLOBS, skipping commits already
+     *  marked. */
+    private static void mark(String tip, Set<String> commits,
+                             Set<String> trees, Set<String> blobs) {
+        ArrayDeque<String> pending = new ArrayDeque<>();
+        pending.push(tip);
+        while (!pending.isEmpty()) {
+            String id = pending.pop();
+            if (!commits.add(id)) {
+                continue;
+            }
+            Commit commit = Commit.getCommitHeader(id);
+            if (commit == null) {
+                throw error("Missing commit %s", id);
+            }
+            Tree.collect(commit.getTree(), trees, blobs);
+            if (commit.getParentOne() != null) {
+                pending.push(commit.getParentOne());
+            }
+            if (commit.getParentTwo() != null) {
+                pending.push(commit.getParentTwo());
+            }
+        }
+    }
+}
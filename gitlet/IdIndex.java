@@ -0,0 +1,273 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** A persistent set of object ids, read through a memory mapping.  The
+ *  file holds a header, a 256-entry fan-out table whose entry B is the
+ *  number of sorted ids whose first byte is at most B, and then the
+ *  20-byte sorted ids themselves in increasing order, as in Git's pack
+ *  indices.  Ids inserted since the file was last written are appended
+ *  after the sorted ones, unsorted, and merged into them once they
+ *  outnumber an eighth of them, as in MessageIndex.  Lookups of full ids
+ *  and of abbreviated (prefix) ids take a binary search within the
+ *  fan-out bucket plus a scan of the short unsorted tail, rather than a
+ *  scan of every object.
+ */
+class IdIndex {
+
+    /** The index of every commit id in the repository. */
+    static final File COMMITS_INDEX = join(Command.GITLET, "commits.idx");
+
+    /** Magic number at the start of an index file. */
+    private static final int MAGIC = 0x47494958;
+    /** Current index format version.  Version 1 files have no unsorted
+     *  tail. */
+    private static final int VERSION = 2;
+    /** Size of the fan-out table. */
+    private static final int FANOUT = 256;
+    /** Byte offset of the fan-out table. */
+    private static final int FANOUT_START = 2 * 4;
+    /** Byte offset of the first id. */
+    private static final int IDS_START = FANOUT_START + FANOUT * 4;
+    /** Length of a raw id. */
+    private static final int ID_BYTES = ObjectStore.ID_BYTES;
+    /** Fewest unsorted ids that cause a merge. */
+    private static final int MIN_TAIL = 64;
+
+    /** An index stored in FILE. */
+    IdIndex(File file) {
+        _file = file;
+    }
+
+    /** Return the index of all commits, creating it from the object store
+     *  if this repository does not have one yet. */
+    static IdIndex commits() {
+        if (_commits == null) {
+            _commits = new IdIndex(COMMITS_INDEX);
+            if (!COMMITS_INDEX.isFile()) {
+                _commits.rewrite(ObjectStore.ids(ObjectStore.Kind.COMMIT));
+            }
+        }
+        return _commits;
+    }
+
+    /** Forget the commit index, so that it is reopened on next use. */
+    static void closeCommits() {
+        _commits = null;
+    }
+
+    /** Return the number of ids in this index. */
+    int size() {
+        return map() == null ? 0 : sorted() + tail();
+    }
+
+    /** Return the hexadecimal id at position K, where the sorted ids
+     *  come first and then the unsorted tail. */
+    String idAt(int k) {
+        byte[] raw = new byte[ID_BYTES];
+        map().get(IDS_START + k * ID_BYTES, raw);
+        return ObjectStore.fromRawId(raw, 0);
+    }
+
+    /** Return true iff the full id ID is present. */
+    boolean contains(String id) {
+        if (!ObjectStore.isId(id)) {
+            return false;
+        }
+        List<String> found = find(id, 1);
+        return !found.isEmpty();
+    }
+
+    /** Return up to LIMIT full ids beginning with the hexadecimal PREFIX,
+     *  in increasing order.  A result of more than one id means PREFIX is
+     *  ambiguous. */
+    List<String> find(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        String p = prefix.toLowerCase();
+        if (p.isEmpty() || p.length() > UID_LENGTH || map() == null) {
+            return result;
+        }
+        for (int i = 0; i < p.length(); i += 1) {
+            if (Character.digit(p.charAt(i), 16) < 0) {
+                return result;
+            }
+        }
+        int first = Character.digit(p.charAt(0), 16) << 4;
+        int last = first | 0xf;
+        if (p.length() > 1) {
+            first = last = first | Character.digit(p.charAt(1), 16);
+        }
+        int lo = first == 0 ? 0 : fanout(first - 1);
+        int hi = fanout(last);
+        byte[] key = ObjectStore.toRawId(padded(p));
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareAt(mid, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int n = sorted();
+        for (int k = lo; k < n && result.size() < limit; k += 1) {
+            String id = idAt(k);
+            if (!id.startsWith(p)) {
+                break;
+            }
+            result.add(id);
+        }
+        boolean added = false;
+        for (int k = n; k < size(); k += 1) {
+            String id = idAt(k);
+            if (id.startsWith(p)) {
+                result.add(id);
+                added = true;
+            }
+        }
+        if (added) {
+            Collections.sort(result);
+            result.subList(Math.min(limit, result.size()), result.size())
+                .clear();
+        }
+        return result;
+    }
+
+    /** Add ID to this index, if it is not already present.  It is
+     *  appended to the unsorted tail, which is merged into the sorted ids
+     *  if it has grown too long. */
+    void insert(String id) {
+        if (contains(id)) {
+            return;
+        }
+        if (map() == null) {
+            rewrite(List.of(id));
+            return;
+        }
+        ByteBuffer raw = ByteBuffer.wrap(ObjectStore.toRawId(id));
+        try (RandomAccessFile f = new RandomAccessFile(_file, "rw")) {
+            FileChannel channel = f.getChannel();
+            long offset = IDS_START + (long) size() * ID_BYTES;
+            while (raw.hasRemaining()) {
+                channel.write(raw, offset + raw.position());
+            }
+        } catch (IOException excp) {
+            throw error("Could not write index: %s", excp.getMessage());
+        }
+        _map = null;
+        map();
+        if (tail() > Math.max(MIN_TAIL, sorted() / 8)) {
+            List<String> ids = new ArrayList<>(size());
+            for (int k = 0; k < size(); k += 1) {
+                ids.add(idAt(k));
+            }
+            Collections.sort(ids);
+            rewrite(ids);
+        }
+    }
+
+    /** Replace the contents of this index with IDS, which must be sorted
+     *  and free of duplicates. */
+    void rewrite(List<String> ids) {
+        int[] counts = new int[FANOUT];
+        ByteArrayOutputStream bytes =
+                new ByteArrayOutputStream(IDS_START + ids.size() * ID_BYTES);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (String id : ids) {
+                counts[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+            }
+            int total = 0;
+            for (int b = 0; b < FANOUT; b += 1) {
+                total += counts[b];
+                out.writeInt(total);
+            }
+            for (String id : ids) {
+                out.write(ObjectStore.toRawId(id));
+            }
+            out.close();
+        } catch (IOException excp) {
+            throw error("Could not write index: %s", excp.getMessage());
+        }
+        _map = null;
+        File tmp = new File(_file.getPath() + ".tmp");
+        writeContents(tmp, bytes.toByteArray());
+        tmp.renameTo(_file);
+    }
+
+    /** Return the number of sorted ids. */
+    private int sorted() {
+        return fanout(FANOUT - 1);
+    }
+
+    /** Return the number of ids in the unsorted tail. */
+    private int tail() {
+        return (_map.capacity() - IDS_START) / ID_BYTES - sorted();
+    }
+
+    /** Return the fan-out table entry for first byte B. */
+    private int fanout(int b) {
+        return _map.getInt(FANOUT_START + b * 4);
+    }
+
+    /** Compare the id at position K with the raw id KEY. */
+    private int compareAt(int k, byte[] key) {
+        int base = IDS_START + k * ID_BYTES;
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int c = (_map.get(base + i) & 0xff) - (key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Return PREFIX padded with zeros to a full id. */
+    private static String padded(String prefix) {
+        StringBuilder result = new StringBuilder(prefix);
+        while (result.length() < UID_LENGTH) {
+            result.append('0');
+        }
+        return result.toString();
+    }
+
+    /** Return the mapping of the index file, mapping it on first use, or
+     *  null if the file does not exist. */
+    private MappedByteBuffer map() {
+        if (_map == null && _file.isFile()) {
+            try (RandomAccessFile f = new RandomAccessFile(_file, "r")) {
+                FileChannel channel = f.getChannel();
+                _map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        channel.size());
+            } catch (IOException excp) {
+                throw error("Could not read index: %s", excp.getMessage());
+            }
+            int version = _map.getInt(4);
+            if (_map.getInt(0) != MAGIC || version < 1 || version > VERSION) {
+                throw error("Bad index file: %s", _file.getName());
+            }
+        }
+        return _map;
+    }
+
+    /** The index file. */
+    private final File _file;
+    /** The mapped contents of _FILE, or null if not yet mapped. */
+    private MappedByteBuffer _map;
+
+    /** The commit index, or null if not yet opened. */
+    private static IdIndex _commits;
+}
@@ -0,0 +1,73 @@
+package gitlet;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/** A printer of commits in the format of log and global-log, writing
+ *  through one buffered writer on the standard output.  A reader such as
+ *  head may close the output before everything is printed; the standard
+ *  output then reports an error rather than throwing, so the printer
+ *  checks for one each time its buffer is written out, and from then on
+ *  tells its caller to stop. */
+class LogPrinter {
+
+    /** Size of the output buffer, in chars. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** A printer on the current standard output. */
+    LogPrinter() {
+        _stdout = System.out;
+        _out = new BufferedWriter(
+            new OutputStreamWriter(_stdout, StandardCharsets.UTF_8),
+            BUFFER_SIZE);
+    }
+
+    /** Print COMMIT, returning false iff the output has been closed, in
+     *  which case nothing more should be printed. */
+    boolean print(Commit commit) {
+        String nl = System.lineSeparator();
+        String text = "===" + nl
+            + "commit " + commit.getSelfSha1() + nl
+            + "Date: " + commit.getTimestamp() + nl
+            + commit.getMessage() + nl
+            + nl;
+        try {
+            if (_written + text.length() > BUFFER_SIZE) {
+                flush();
+            }
+            if (_closed) {
+                return false;
+            }
+            _out.write(text);
+            _written += text.length();
+        } catch (IOException excp) {
+            _closed = true;
+        }
+        return !_closed;
+    }
+
+    /** Write out everything printed so far. */
+    void flush() {
+        try {
+            _out.flush();
+        } catch (IOException excp) {
+            _closed = true;
+        }
+        _written = 0;
+        if (_stdout.checkError()) {
+            _closed = true;
+        }
+    }
+
+    /** The standard output. */
+    private final PrintStream _stdout;
+    /** The buffered writer on _stdout. */
+    private final BufferedWriter _out;
+    /** Number of chars written since the last flush. */
+    private int _written;
+    /** True once the output is found to be closed. */
+    private boolean _closed;
+}
@@ -0,0 +1,85 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/** A map of bounded total weight that discards its least recently used
+ *  entries to make room for new ones.  The weight of each value is given
+ *  by a weigher fixed when the cache is made; a value heavier than the
+ *  whole cache is never kept.  Lookups are counted as hits or misses.
+ *  All operations are synchronized, so a cache may be shared by the
+ *  threads of Parallel loops. */
+class LruCache<K, V> {
+
+    /** A cache holding values of total weight at most CAPACITY, weighing
+     *  each value with WEIGHER. */
+    LruCache(long capacity, ToLongFunction<V> weigher) {
+        _capacity = capacity;
+        _weigher = weigher;
+        _map = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /** Return the value cached for KEY, or null if there is none. */
+    synchronized V get(K key) {
+        V value = _map.get(key);
+        if (value == null) {
+            _misses += 1;
+        } else {
+            _hits += 1;
+        }
+        return value;
+    }
+
+    /** Cache VALUE for KEY, evicting older entries as needed. */
+    synchronized void put(K key, V value) {
+        long weight = _weigher.applyAsLong(value);
+        V old = _map.remove(key);
+        if (old != null) {
+            _weight -= _weigher.applyAsLong(old);
+        }
+        if (weight > _capacity) {
+            return;
+        }
+        _map.put(key, value);
+        _weight += weight;
+        Iterator<Map.Entry<K, V>> entries = _map.entrySet().iterator();
+        while (_weight > _capacity && entries.hasNext()) {
+            _weight -= _weigher.applyAsLong(entries.next().getValue());
+            entries.remove();
+        }
+    }
+
+    /** Discard all entries, keeping the counts of hits and misses. */
+    synchronized void clear() {
+        _map.clear();
+        _weight = 0;
+    }
+
+    /** Return the number of lookups that found a value. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that found none. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return the number of entries held. */
+    synchronized int size() {
+        return _map.size();
+    }
+
+    /** Largest total weight held. */
+    private final long _capacity;
+    /** Gives the weight of a value. */
+    private final ToLongFunction<V> _weigher;
+    /** Entries from least to most recently used. */
+    private final LinkedHashMap<K, V> _map;
+    /** Total weight of the values held. */
+    private long _weight;
+    /** Lookup counts. */
+    private long _hits, _misses;
+}
@@ -0,0 +1,155 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static gitlet.LzOutputStream.BLOCK_SIZE;
+import static gitlet.LzOutputStream.COMPRESSED;
+import static gitlet.LzOutputStream.MIN_MATCH;
+import static gitlet.LzOutputStream.STORED;
+
+/** A stream of the bytes whose compressed form, as written by an
+ *  LzOutputStream, is read from an underlying stream, decoded a block at
+ *  a time. */
+class LzInputStream extends FilterInputStream {
+
+    /** A stream decompressing the contents of IN. */
+    LzInputStream(InputStream in) {
+        super(new DataInputStream(in));
+        _data = (DataInputStream) this.in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (_pos == _count && !nextBlock()) {
+            return -1;
+        }
+        _pos += 1;
+        return _block[_pos - 1] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (_pos == _count && !nextBlock()) {
+            return -1;
+        }
+        int n = Math.min(len, _count - _pos);
+        System.arraycopy(_block, _pos, b, off, n);
+        _pos += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && (_pos < _count || nextBlock())) {
+            int k = (int) Math.min(n - skipped, _count - _pos);
+            _pos += k;
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return _count - _pos;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /** Read and decode the next block, returning false at the end of the
+     *  stream. */
+    private boolean nextBlock() throws IOException {
+        int type = _data.read();
+        if (type < 0) {
+            return false;
+        }
+        int n = _data.readInt();
+        if (n <= 0 || n > BLOCK_SIZE) {
+            throw new IOException("corrupt compressed block");
+        }
+        if (type == STORED) {
+            _data.readFully(_block, 0, n);
+        } else if (type == COMPRESSED) {
+            int len = _data.readInt();
+            if (len < 0 || len > BLOCK_SIZE) {
+                throw new IOException("corrupt compressed block");
+            }
+            _data.readFully(_coded, 0, len);
+            decompress(_coded, len, _block, n);
+        } else {
+            throw new IOException("corrupt compressed block");
+        }
+        _pos = 0;
+        _count = n;
+        return true;
+    }
+
+    /** Decode the LEN bytes of SRC into the N bytes of DST. */
+    private static void decompress(byte[] src, int len, byte[] dst, int n)
+        throws IOException {
+        try {
+            int in = 0, out = 0;
+            while (true) {
+                int token = src[in] & 0xff;
+                in += 1;
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = src[in] & 0xff;
+                        in += 1;
+                        literals += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(src, in, dst, out, literals);
+                in += literals;
+                out += literals;
+                if (out == n) {
+                    return;
+                }
+                int offset = (src[in] & 0xff) | (src[in + 1] & 0xff) << 8;
+                in += 2;
+                int match = token & 15;
+                if (match == 15) {
+                    int b;
+                    do {
+                        b = src[in] & 0xff;
+                        in += 1;
+                        match += b;
+                    } while (b == 255);
+                }
+                match += MIN_MATCH;
+                if (offset == 0 || offset > out || out + match > n) {
+                    throw new IOException("corrupt compressed block");
+                }
+                for (int i = 0; i < match; i += 1) {
+                    dst[out + i] = dst[out - offset + i];
+                }
+                out += match;
+            }
+        } catch (IndexOutOfBoundsException excp) {
+            throw new EOFException("corrupt compressed block");
+        }
+    }
+
+    /** The underlying stream. */
+    private final DataInputStream _data;
+    /** Decoded bytes of the current block. */
+    private final byte[] _block = new byte[BLOCK_SIZE];
+    /** Coding of the current block. */
+    private final byte[] _coded = new byte[BLOCK_SIZE];
+    /** Number of bytes in _block. */
+    private int _count;
+    /** Position of the next byte of _block to be read. */
+    private int _pos;
+}
@@ -0,0 +1,198 @@
+package gitlet;
+
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/** A stream that compresses the bytes written to it with a simple,
+ *  fast LZ77 coding in the style of LZ4.  Input is cut into blocks of
+ *  BLOCK_SIZE bytes, each written as a type byte, its length and, for a
+ *  compressed block, the length of its coding followed by a sequence of
+ *  tokens.  A token's high four bits count the literal bytes that follow
+ *  it and its low four bits the length, less MIN_MATCH, of a copy of
+ *  earlier bytes of the block whose distance back follows the literals as
+ *  two bytes; a count of 15 is extended by following bytes up to 255
+ *  each.  The last token of a block has literals only.  A block that does
+ *  not shrink is stored as it is.  See LzInputStream. */
+class LzOutputStream extends FilterOutputStream {
+
+    /** Largest number of bytes in a block. */
+    static final int BLOCK_SIZE = 1 << 16;
+    /** Block type of an uncompressed block. */
+    static final int STORED = 0;
+    /** Block type of a compressed block. */
+    static final int COMPRESSED = 1;
+    /** Shortest copy that is encoded. */
+    static final int MIN_MATCH = 4;
+    /** Log base 2 of the size of the table of earlier positions. */
+    private static final int HASH_BITS = 14;
+    /** Number of bytes at the end of a block that are always literal. */
+    private static final int LAST_LITERALS = 5;
+
+    /** A stream writing the compressed form of its input to OUT. */
+    LzOutputStream(OutputStream out) {
+        super(new DataOutputStream(out));
+        _data = (DataOutputStream) this.out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (_count == BLOCK_SIZE) {
+            flushBlock();
+        }
+        _block[_count] = (byte) b;
+        _count += 1;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (_count == BLOCK_SIZE) {
+                flushBlock();
+            }
+            int n = Math.min(len, BLOCK_SIZE - _count);
+            System.arraycopy(b, off, _block, _count, n);
+            _count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBlock();
+        _data.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!_closed) {
+            _closed = true;
+            flushBlock();
+            _data.close();
+        }
+    }
+
+    /** Write the bytes buffered so far as one block. */
+    private void flushBlock() throws IOException {
+        if (_count == 0) {
+            return;
+        }
+        int len = compress(_block, _count, _coded);
+        if (len < 0) {
+            _data.writeByte(STORED);
+            _data.writeInt(_count);
+            _data.write(_block, 0, _count);
+        } else {
+            _data.writeByte(COMPRESSED);
+            _data.writeInt(_count);
+            _data.writeInt(len);
+            _data.write(_coded, 0, len);
+        }
+        _count = 0;
+    }
+
+    /** Compress the first N bytes of SRC into DST, returning the length of
+     *  the result, or -1 if it would be no shorter than N. */
+    private int compress(byte[] src, int n, byte[] dst) {
+        Arrays.fill(_table, -1);
+        int limit = n - LAST_LITERALS - MIN_MATCH;
+        int pos = 0, anchor = 0, out = 0;
+        while (pos < limit) {
+            int h = hash(src, pos);
+            int ref = _table[h];
+            _table[h] = pos;
+            if (ref < 0 || pos - ref > 0xffff || !matches(src, ref, pos)) {
+                pos += 1;
+                continue;
+            }
+            int len = MIN_MATCH;
+            int end = n - LAST_LITERALS;
+            while (pos + len < end && src[ref + len] == src[pos + len]) {
+                len += 1;
+            }
+            out = token(src, anchor, pos - anchor, len, dst, out, n);
+            if (out < 0) {
+                return -1;
+            }
+            dst[out] = (byte) (pos - ref);
+            dst[out + 1] = (byte) ((pos - ref) >>> 8);
+            out = length(len - MIN_MATCH, dst, out + 2, n);
+            if (out < 0) {
+                return -1;
+            }
+            pos += len;
+            anchor = pos;
+        }
+        return token(src, anchor, n - anchor, 0, dst, out, n);
+    }
+
+    /** Write to DST at OUT a token with the LITERALS bytes of SRC from
+     *  ANCHOR and a following copy of MATCH bytes, or none if MATCH is 0,
+     *  and then the literals themselves.  Return the position after them
+     *  in DST, or -1 if that would reach MAX. */
+    private static int token(byte[] src, int anchor, int literals, int match,
+                             byte[] dst, int out, int max) {
+        if (out + literals + literals / 255 + 4 >= max) {
+            return -1;
+        }
+        int m = match == 0 ? 0 : match - MIN_MATCH;
+        dst[out] = (byte) ((Math.min(literals, 15) << 4) | Math.min(m, 15));
+        out = length(literals, dst, out + 1, max);
+        if (out < 0) {
+            return -1;
+        }
+        System.arraycopy(src, anchor, dst, out, literals);
+        return out + literals;
+    }
+
+    /** Write to DST at OUT the extension bytes of a count LEN held in a
+     *  token's four bits, returning the position after them, or -1 if that
+     *  would reach MAX. */
+    private static int length(int len, byte[] dst, int out, int max) {
+        if (len < 15) {
+            return out;
+        }
+        len -= 15;
+        while (true) {
+            if (out + 3 >= max) {
+                return -1;
+            }
+            if (len < 255) {
+                dst[out] = (byte) len;
+                return out + 1;
+            }
+            dst[out] = (byte) 255;
+            out += 1;
+            len -= 255;
+        }
+    }
+
+    /** Return true iff the MIN_MATCH bytes of SRC at A and B are equal. */
+    private static boolean matches(byte[] src, int a, int b) {
+        return src[a] == src[b] && src[a + 1] == src[b + 1]
+            && src[a + 2] == src[b + 2] && src[a + 3] == src[b + 3];
+    }
+
+    /** Return the table slot of the MIN_MATCH bytes of SRC at POS. */
+    private static int hash(byte[] src, int pos) {
+        int v = (src[pos] & 0xff) | (src[pos + 1] & 0xff) << 8
+            | (src[pos + 2] & 0xff) << 16 | (src[pos + 3] & 0xff) << 24;
+        return (v * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+    /** The underlying stream. */
+    private final DataOutputStream _data;
+    /** Bytes of the current block. */
+    private final byte[] _block = new byte[BLOCK_SIZE];
+    /** Coding of the current block. */
+    private final byte[] _coded = new byte[BLOCK_SIZE];
+    /** Last position in the block with each hash. */
+    private final int[] _table = new int[1 << HASH_BITS];
+    /** Number of bytes in _block. */
+    private int _count;
+    /** True once closed. */
+    private boolean _closed;
+}
@@ -0,0 +1,104 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of LzOutputStream and LzInputStream. */
+public class LzStreamTest {
+
+    /** Return DATA compressed by an LzOutputStream, written in pieces of
+     *  at most CHUNK bytes. */
+    private static byte[] compress(byte[] data, int chunk)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (LzOutputStream out = new LzOutputStream(bytes)) {
+            for (int i = 0; i < data.length; i += chunk) {
+                out.write(data, i, Math.min(chunk, data.length - i));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Return the bytes decompressed from CODED. */
+    private static byte[] decompress(byte[] coded) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in =
+                 new LzInputStream(new ByteArrayInputStream(coded))) {
+            byte[] buf = new byte[1000];
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                bytes.write(buf, 0, n);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Check that DATA survives a round trip. */
+    private static void checkRoundTrip(byte[] data) throws IOException {
+        assertArrayEquals(data, decompress(compress(data, 4096)));
+        assertArrayEquals(data, decompress(compress(data, 7)));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        checkRoundTrip(new byte[0]);
+    }
+
+    @Test
+    public void testShort() throws IOException {
+        checkRoundTrip("wug".getBytes());
+        checkRoundTrip("abcdabcdabcd".getBytes());
+    }
+
+    @Test
+    public void testRepetitive() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i += 1) {
+            text.append("line ").append(i % 17).append(" of the file\n");
+        }
+        byte[] data = text.toString().getBytes();
+        checkRoundTrip(data);
+        assertTrue(compress(data, data.length).length < data.length / 4);
+    }
+
+    @Test
+    public void testLongRuns() throws IOException {
+        byte[] data = new byte[3 * LzOutputStream.BLOCK_SIZE + 11];
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = (byte) (i / 1000);
+        }
+        checkRoundTrip(data);
+    }
+
+    @Test
+    public void testRandom() throws IOException {
+        Random rand = new Random(42);
+        byte[] data = new byte[2 * LzOutputStream.BLOCK_SIZE + 100];
+        rand.nextBytes(data);
+        checkRoundTrip(data);
+        assertTrue(compress(data, data.length).length
+                   < data.length + data.length / 100);
+    }
+
+    @Test
+    public void testSingleBytes() throws IOException {
+        byte[] data = "the quick brown fox; the quick brown wug".getBytes();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (LzOutputStream out = new LzOutputStream(bytes)) {
+            for (byte b : data) {
+                out.write(b);
+            }
+        }
+        InputStream in =
+            new LzInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (byte b : data) {
+            assertEquals(b & 0xff, in.read());
+        }
+        assertEquals(-1, in.read());
+    }
+}
@@ -1,5 +1,11 @@
 package gitlet;
 import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import static gitlet.Utils.error;
 import static gitlet.Utils.message;
 import static java.lang.System.exit;
 
@@ -12,16 +18,141 @@ public class Main {
 
     /**
      * Usage: java gitlet.Main ARGS, where ARGS contains
-     * <COMMAND> <OPERAND> ....
+     * <COMMAND> <OPERAND> .... If a daemon serves the current
+     * repository, the command is run there.
      */
     public static void main(String... args) throws IOException {
-        Command command = new Command();
+        if (args.length > 0 && !isDaemonStart(args)) {
+            int status = DaemonClient.forward(args);
+            if (status >= 0) {
+                exit(status);
+            }
+        }
+        exit(run(args, new Command()));
+    }
+
+    /**
+     * Run the command ARGS with repository state C, returning the exit
+     * status.
+     */
+    public static int run(String[] args, Command c) throws IOException {
         if (args.length == 0) {
             message("Please enter a command");
-            exit(0);
+            return 0;
+        }
+        try {
+            switchCommand(args, c);
+            c.saveFileIndex();
+        } catch (GitletException excp) {
+            message("%s", excp.getMessage());
+        }
+        if (Command.GITLET.isDirectory()
+                && Boolean.parseBoolean(Config.get(Config.STATS, "false"))) {
+            printStats();
         }
-        switchCommand(args, command);
-        exit(0);
+        return 0;
+    }
+
+    /* print the hit and miss counts of the caches on standard error. */
+    private static void printStats() {
+        LruCache<String, byte[]> bases = ObjectStore.baseCache();
+        System.err.printf("commit cache: %d hits, %d misses%n",
+                Commit.cacheHits(), Commit.cacheMisses());
+        System.err.printf("delta base cache: %d hits, %d misses%n",
+                bases.hits(), bases.misses());
+    }
+
+    /* run diff [-U N] [BRANCH1 [BRANCH2]], from ARGS, with C. */
+    private static void diff(String[] args, Command c) {
+        int context = 0;
+        int k = 1;
+        if (k < args.length && args[k].startsWith("-U")) {
+            String n = args[k].substring(2);
+            k += 1;
+            if (n.isEmpty() && k < args.length) {
+                n = args[k];
+                k += 1;
+            }
+            try {
+                context = Integer.parseInt(n);
+            } catch (NumberFormatException excp) {
+                context = -1;
+            }
+            if (context < 0) {
+                message("Incorrect operands");
+                return;
+            }
+        }
+        String[] branches = Arrays.copyOfRange(args, k, args.length);
+        if (branches.length > 2) {
+            message("Incorrect operands");
+            return;
+        }
+        c.diff(branches.length > 0 ? branches[0] : null,
+                branches.length > 1 ? branches[1] : null, context);
+    }
+
+    /* run global-log [-n N] [--since DATE] [--until DATE], from ARGS,
+       with C. */
+    private static void globalLog(String[] args, Command c) {
+        int limit = -1;
+        long since = Long.MIN_VALUE, until = Long.MAX_VALUE;
+        for (int k = 1; k < args.length; k += 2) {
+            if (k + 1 == args.length) {
+                message("Incorrect operands");
+                return;
+            }
+            String value = args[k + 1];
+            switch (args[k]) {
+            case "-n":
+                try {
+                    limit = Integer.parseInt(value);
+                } catch (NumberFormatException excp) {
+                    limit = -1;
+                }
+                if (limit < 0) {
+                    message("Incorrect operands");
+                    return;
+                }
+                break;
+            case "--since":
+                since = parseDate(value, false);
+                break;
+            case "--until":
+                until = parseDate(value, true);
+                break;
+            default:
+                message("Incorrect operands");
+                return;
+            }
+        }
+        c.globalLog(limit, since, until);
+    }
+
+    /* return DATE, as yyyy-MM-dd with an optional HH:mm[:ss] after a
+       space or T, in the local time zone, in milliseconds since the
+       epoch.  a date alone means its start, or its end if END. */
+    private static long parseDate(String date, boolean end) {
+        ZoneId zone = ZoneId.systemDefault();
+        try {
+            if (date.length() <= "yyyy-MM-dd".length()) {
+                LocalDate day = LocalDate.parse(date);
+                if (end) {
+                    day = day.plusDays(1);
+                }
+                long start = day.atStartOfDay(zone).toInstant().toEpochMilli();
+                return end ? start - 1 : start;
+            }
+            LocalDateTime time = LocalDateTime.parse(date.replace(' ', 'T'));
+            return time.atZone(zone).toInstant().toEpochMilli();
+        } catch (DateTimeParseException excp) {
+            throw error("Invalid date: %s", date);
+        }
+    }
+
+    /* return true iff args start a daemon rather than run a command. */
+    private static boolean isDaemonStart(String[] args) {
+        return args[0].equals("daemon") && args.length == 1;
     }
 
     public static boolean validateNumArgs(String[] args, int n) {
@@ -33,18 +164,14 @@ public class Main {
     }
     public static void checkGit(Command command) {
         if (!command.GITLET.exists()) {
-            message("Not in an initialized Gitlet directory.");
-            exit(0);
+            throw error("Not in an initialized Gitlet directory.");
         }
     }
     public static void checkGitAndArg(Command command,
                                       String[] args, int n) {
-        if (!command.GITLET.exists()) {
-            message("Not in an initialized Gitlet directory.");
-            exit(0);
-        }
-        if (!validateNumArgs(args, n)) {
-            exit(0);
+        checkGit(command);
+        if (args.length != n) {
+            throw error("Incorrect operands");
         }
     }
     public static void checkOut(String[] args, Command c) {
@@ -83,8 +210,12 @@ public class Main {
             break;
         }
         case "add": {
-            checkGitAndArg(c, args, 2);
-            c.add(args[1]);
+            checkGit(c);
+            if (args.length < 2) {
+                message("Incorrect operands");
+                break;
+            }
+            c.addAll(Arrays.asList(args).subList(1, args.length));
             break;
         }
         case "commit": {
@@ -93,8 +224,18 @@ public class Main {
             break;
         }
         case "log": {
-            checkGitAndArg(c, args, 1);
-            c.log();
+            if (args.length == 3 && args[1].equals("--")) {
+                checkGit(c);
+                c.log(args[2]);
+            } else {
+                checkGitAndArg(c, args, 1);
+                c.log();
+            }
+            break;
+        }
+        case "blame": {
+            checkGitAndArg(c, args, 2);
+            c.blame(args[1]);
             break;
         }
         case "checkout": {
@@ -116,13 +257,18 @@ public class Main {
             throws IOException {
         switch (args[0]) {
         case "global-log": {
-            checkGitAndArg(c, args, 1);
-            c.globalLog();
+            checkGit(c);
+            globalLog(args, c);
             break;
         }
         case "find": {
-            checkGitAndArg(c, args, 2);
-            c.find(args[1]);
+            if (args.length == 3 && args[1].equals("--grep")) {
+                checkGit(c);
+                c.find(args[2], true);
+            } else {
+                checkGitAndArg(c, args, 2);
+                c.find(args[1], false);
+            }
             break;
         }
         case "status": {
@@ -151,16 +297,45 @@ public class Main {
             c.merge(args[1]);
             break;
         }
-        case "diff": {
+        case "repack": {
+            checkGitAndArg(c, args, 1);
+            c.repack();
+            break;
+        }
+        case "gc": {
+            checkGitAndArg(c, args, 1);
+            c.gc();
+            break;
+        }
+        case "migrate": {
+            checkGitAndArg(c, args, 1);
+            c.migrate();
+            break;
+        }
+        case "config": {
+            checkGit(c);
+            if (args.length == 2) {
+                c.config(args[1], null);
+            } else if (validateNumArgs(args, 3)) {
+                c.config(args[1], args[2]);
+            }
+            break;
+        }
+        case "daemon": {
+            checkGit(c);
             if (args.length == 1) {
-                c.diff(null, null);
-            } else if (args.length == 2) {
-                c.diff(args[1], null);
-            } else if (args.length == 3) {
-                c.diff(args[1], args[2]);
+                Daemon.serve();
+            } else if (args.length == 2 && args[1].equals("stop")) {
+                message("No Gitlet daemon is running.");
+            } else {
+                message("Incorrect operands");
             }
             break;
         }
+        case "diff": {
+            diff(args, c);
+            break;
+        }
         default: {
             message("No command with that name exists.");
         }
@@ -0,0 +1,355 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** An index of commit messages, answering find without reading every
+ *  commit.  Every commit appends its id and message to LOG_FILE, which
+ *  is built from the commit graph on first use.  The log is compacted
+ *  into INDEX_FILE, a table of keys sorted by 64-bit hash, each with a
+ *  list of the ids of the commits having it: one key for each whole
+ *  message, for exact queries, and one for each of its words, for word
+ *  queries.  As in a log-structured merge tree, records appended since
+ *  the last compaction are scanned directly, and the log is compacted
+ *  again once they outnumber an eighth of those indexed.  A query thus
+ *  costs a binary search of the table per key, plus the unindexed tail,
+ *  plus a check of each candidate commit, which weeds out the commits
+ *  whose keys merely collide. */
+class MessageIndex {
+
+    /** File holding the id and message of each commit, in order. */
+    static final File LOG_FILE = join(Command.GITLET, "messages");
+    /** File holding the compacted index of LOG_FILE. */
+    static final File INDEX_FILE = join(Command.GITLET, "messages.idx");
+
+    /** Magic number at the start of the index file. */
+    private static final int MAGIC = 0x47494458;
+    /** Current index format version. */
+    private static final int VERSION = 1;
+    /** Length of the index header: magic, version, key count, and the
+     *  number and total length of the log records indexed. */
+    private static final int HEADER_BYTES = 4 * 4 + 8;
+    /** Length of a key entry: hash, postings offset, postings count. */
+    private static final int KEY_BYTES = 8 + 4 + 4;
+    /** Length of a raw id. */
+    private static final int ID_BYTES = ObjectStore.ID_BYTES;
+    /** Fewest unindexed records that cause a compaction. */
+    private static final int MIN_TAIL = 64;
+
+    /** Return the message index of this repository, creating its log on
+     *  first use. */
+    static MessageIndex get() {
+        if (_index == null) {
+            _index = new MessageIndex();
+            if (!LOG_FILE.isFile()) {
+                writeContents(LOG_FILE, new byte[0]);
+                List<Commit> commits = new ArrayList<>();
+                for (String id : CommitGraph.get().ids()) {
+                    commits.add(Commit.getCommitHeader(id));
+                }
+                _index.append(commits);
+                _index.compact();
+            }
+        }
+        return _index;
+    }
+
+    /** Forget the index, so that it is reread on next use. */
+    static void close() {
+        _index = null;
+    }
+
+    /** Record the message of COMMIT, which has just been saved, if the
+     *  index exists; otherwise it is included when the index is built. */
+    static void add(Commit commit) {
+        if (LOG_FILE.isFile()) {
+            MessageIndex index = get();
+            index.append(List.of(commit));
+            int tail = index.tail().size();
+            if (tail > Math.max(MIN_TAIL, index.indexed() / 8)) {
+                index.compact();
+            }
+        }
+    }
+
+    /** Return the ids of the commits whose message is MESSAGE, sorted. */
+    List<String> find(String message) {
+        TreeSet<String> result = new TreeSet<>();
+        for (String id : postings(messageKey(message))) {
+            if (Commit.getCommitHeader(id).getMessage().equals(message)) {
+                result.add(id);
+            }
+        }
+        for (Record r : tail()) {
+            if (r.message.equals(message)) {
+                result.add(r.id);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return the ids of the commits whose message contains every word
+     *  of QUERY, ignoring case, sorted.  A word is a maximal run of
+     *  letters and digits. */
+    List<String> grep(String query) {
+        Set<String> words = words(query);
+        TreeSet<String> result = new TreeSet<>();
+        if (words.isEmpty()) {
+            return new ArrayList<>(result);
+        }
+        Set<String> candidates = null;
+        for (String word : words) {
+            Set<String> ids = new HashSet<>(postings(wordKey(word)));
+            if (candidates == null) {
+                candidates = ids;
+            } else {
+                candidates.retainAll(ids);
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
+        }
+        for (String id : candidates) {
+            String message = Commit.getCommitHeader(id).getMessage();
+            if (words(message).containsAll(words)) {
+                result.add(id);
+            }
+        }
+        for (Record r : tail()) {
+            if (words(r.message).containsAll(words)) {
+                result.add(r.id);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return the words of TEXT, lower-cased, in order of first
+     *  appearance. */
+    static Set<String> words(String text) {
+        Set<String> result = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i += 1) {
+            boolean inWord = i < text.length()
+                && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                result.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return result;
+    }
+
+    /** Append the ids and messages of COMMITS to the log. */
+    private void append(List<Commit> commits) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            for (Commit commit : commits) {
+                byte[] message =
+                    commit.getMessage().getBytes(StandardCharsets.UTF_8);
+                writeId(out, commit.getSelfSha1());
+                out.writeInt(message.length);
+                out.write(message);
+            }
+            out.close();
+        } catch (IOException excp) {
+            throw error("Internal error writing message index.");
+        }
+        ByteBuffer records = ByteBuffer.wrap(bytes.toByteArray());
+        try (RandomAccessFile f = new RandomAccessFile(LOG_FILE, "rw")) {
+            FileChannel channel = f.getChannel();
+            long offset = channel.size();
+            while (records.hasRemaining()) {
+                channel.write(records, offset + records.position());
+            }
+        } catch (IOException excp) {
+            throw error("Could not write message index: %s",
+                        excp.getMessage());
+        }
+    }
+
+    /** Rewrite INDEX_FILE to cover the whole log. */
+    private void compact() {
+        TreeMap<Long, List<String>> keys = new TreeMap<>();
+        List<Record> records = records(0);
+        for (Record r : records) {
+            keys.computeIfAbsent(messageKey(r.message), k -> new ArrayList<>())
+                .add(r.id);
+            for (String word : words(r.message)) {
+                keys.computeIfAbsent(wordKey(word), k -> new ArrayList<>())
+                    .add(r.id);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(keys.size());
+            out.writeInt(records.size());
+            out.writeLong(LOG_FILE.length());
+            int offset = HEADER_BYTES + keys.size() * KEY_BYTES;
+            for (Map.Entry<Long, List<String>> e : keys.entrySet()) {
+                out.writeLong(e.getKey());
+                out.writeInt(offset);
+                out.writeInt(e.getValue().size());
+                offset += e.getValue().size() * ID_BYTES;
+            }
+            for (List<String> ids : keys.values()) {
+                for (String id : ids) {
+                    writeId(out, id);
+                }
+            }
+            out.close();
+        } catch (IOException excp) {
+            throw error("Internal error writing message index.");
+        }
+        File tmp = new File(INDEX_FILE.getPath() + ".tmp");
+        writeContents(tmp, bytes.toByteArray());
+        tmp.renameTo(INDEX_FILE);
+        _map = null;
+    }
+
+    /** Return the ids of the indexed commits having key KEY. */
+    private List<String> postings(long key) {
+        List<String> result = new ArrayList<>();
+        MappedByteBuffer map = map();
+        if (map == null) {
+            return result;
+        }
+        int lo = 0, hi = map.getInt(8);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            long k = map.getLong(HEADER_BYTES + mid * KEY_BYTES);
+            if (k < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int entry = HEADER_BYTES + lo * KEY_BYTES;
+        if (lo < map.getInt(8) && map.getLong(entry) == key) {
+            int offset = map.getInt(entry + 8), n = map.getInt(entry + 12);
+            byte[] raw = new byte[ID_BYTES];
+            for (int i = 0; i < n; i += 1) {
+                map.get(offset + i * ID_BYTES, raw);
+                result.add(ObjectStore.fromRawId(raw, 0));
+            }
+        }
+        return result;
+    }
+
+    /** Return the number of log records covered by the index. */
+    private int indexed() {
+        MappedByteBuffer map = map();
+        return map == null ? 0 : map.getInt(12);
+    }
+
+    /** Return the log records not covered by the index. */
+    private List<Record> tail() {
+        MappedByteBuffer map = map();
+        return records(map == null ? 0 : map.getLong(16));
+    }
+
+    /** Return the log records from byte OFFSET on. */
+    private List<Record> records(long offset) {
+        List<Record> result = new ArrayList<>();
+        try (RandomAccessFile f = new RandomAccessFile(LOG_FILE, "r")) {
+            long end = f.length();
+            f.seek(offset);
+            while (f.getFilePointer() + ID_BYTES + 4 <= end) {
+                byte[] raw = new byte[ID_BYTES];
+                f.readFully(raw);
+                byte[] message = new byte[f.readInt()];
+                if (f.getFilePointer() + message.length > end) {
+                    break;
+                }
+                f.readFully(message);
+                result.add(new Record(ObjectStore.fromRawId(raw, 0),
+                    new String(message, StandardCharsets.UTF_8)));
+            }
+        } catch (IOException excp) {
+            throw error("Could not read message index: %s",
+                        excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Return the mapping of the index file, mapping it on first use, or
+     *  null if there is no valid index. */
+    private MappedByteBuffer map() {
+        if (_map == null && INDEX_FILE.isFile()) {
+            try (RandomAccessFile f = new RandomAccessFile(INDEX_FILE, "r")) {
+                FileChannel channel = f.getChannel();
+                _map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                   channel.size());
+            } catch (IOException excp) {
+                throw error("Could not read message index: %s",
+                            excp.getMessage());
+            }
+            if (_map.getInt(0) != MAGIC || _map.getInt(4) != VERSION) {
+                _map = null;
+            }
+        }
+        return _map;
+    }
+
+    /** Return the key of whole message MESSAGE. */
+    private static long messageKey(String message) {
+        return hash("m\0" + message);
+    }
+
+    /** Return the key of word WORD. */
+    private static long wordKey(String word) {
+        return hash("w\0" + word);
+    }
+
+    /** Return the 64-bit FNV-1a hash of the UTF-8 encoding of TEXT. */
+    private static long hash(String text) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /** One log record: a commit id and its message. */
+    private static class Record {
+        /** The record of commit ID with message MESSAGE. */
+        Record(String id, String message) {
+            this.id = id;
+            this.message = message;
+        }
+
+        /** The commit id. */
+        final String id;
+        /** The commit message. */
+        final String message;
+    }
+
+    /** The mapped index file, or null if not yet mapped. */
+    private MappedByteBuffer _map;
+
+    /** The index of this repository, or null if not yet opened. */
+    private static MessageIndex _index;
+}
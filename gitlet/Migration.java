@@ -0,0 +1,226 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static gitlet.Utils.*;
+
+/** Conversion of repositories written by older versions of Gitlet, which
+ *  stored commits and the stage with Java serialization, to the current
+ *  binary formats.  Old objects remain readable, being converted as they
+ *  are read; the migrate command rewrites them once and for all.  The id
+ *  of an old commit is not the hash of its contents, so migrate stores
+ *  each converted commit under the hash of its new encoding. */
+class Migration {
+
+    /** Return true iff CONTENTS holds a Java-serialized object. */
+    static boolean isLegacy(byte[] contents) {
+        return contents.length >= 2 && (contents[0] & 0xff) == 0xac
+            && (contents[1] & 0xff) == 0xed;
+    }
+
+    /** Return the commit with id ID serialized in CONTENTS. */
+    static Commit legacyCommit(String id, byte[] contents) {
+        LegacyCommit old = read(contents, LegacyCommit.class);
+        long time;
+        int zoneOffset;
+        try {
+            SimpleDateFormat ft =
+                new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
+            time = ft.parse(old.timestamp).getTime();
+            String zone =
+                old.timestamp.substring(old.timestamp.length() - 5);
+            int hhmm = Integer.parseInt(zone.substring(1));
+            zoneOffset = (hhmm / 100 * 60 + hhmm % 100)
+                * (zone.charAt(0) == '-' ? -1 : 1);
+        } catch (ParseException | NumberFormatException excp) {
+            throw error("Bad timestamp in commit %s", id);
+        }
+        return new Commit(id, old.message, old.parentOne, old.parentTwo,
+                          time, zoneOffset, null, old.blobHash);
+    }
+
+    /** Return the stage serialized in CONTENTS. */
+    static Stage legacyStage(byte[] contents) {
+        LegacyStage old = read(contents, LegacyStage.class);
+        Stage stage = new Stage();
+        stage.getAdd().putAll(old.addHash);
+        stage.getDelete().putAll(old.deleteHash);
+        stage.getNonCategorized().putAll(old.nonCategorizedHash);
+        return stage;
+    }
+
+    /** Rewrite every commit and the stage of the current repository in the
+     *  current formats.  A converted commit is stored under the id of its
+     *  new encoding, as are its descendants, whose parent ids change with
+     *  it; the branches are moved to the new ids and the old commits are
+     *  deleted.  Returns the number of commits given new ids. */
+    static int migrate() {
+        HashMap<String, Commit> commits = new HashMap<>();
+        HashSet<String> legacy = new HashSet<>();
+        for (String id : ObjectStore.ids(ObjectStore.Kind.COMMIT)) {
+            byte[] contents = ObjectStore.read(ObjectStore.Kind.COMMIT, id);
+            if (isLegacy(contents)) {
+                legacy.add(id);
+                commits.put(id, legacyCommit(id, contents));
+            } else {
+                commits.put(id, Commit.decode(id, contents, false));
+            }
+        }
+        HashMap<String, String> newIds = new HashMap<>();
+        for (String id : commits.keySet()) {
+            renumber(id, commits, legacy, newIds);
+        }
+        HashSet<String> replaced = new HashSet<>();
+        for (Map.Entry<String, String> entry : newIds.entrySet()) {
+            if (!entry.getKey().equals(entry.getValue())) {
+                replaced.add(entry.getKey());
+            }
+        }
+        List<String> branches = plainFilenamesIn(Command.BRANCHES_DIR);
+        if (branches != null) {
+            for (String name : branches) {
+                File branch = join(Command.BRANCHES_DIR, name);
+                String id = newIds.get(readContentsAsString(branch));
+                if (id != null) {
+                    writeContents(branch, id);
+                }
+            }
+        }
+        if (Stage.STAGE_FILE.isFile()
+            && isLegacy(readContents(Stage.STAGE_FILE))) {
+            Stage.load().save();
+        }
+        if (!replaced.isEmpty()) {
+            ObjectStore.delete(ObjectStore.Kind.COMMIT, replaced);
+            CommitGraph.rebuild();
+        }
+        return replaced.size();
+    }
+
+    /** Record in NEWIDS the id under which commit ID of COMMITS is to be
+     *  stored, and those of its ancestors, writing each commit that is in
+     *  LEGACY or has a parent given a new id under its new id. */
+    private static void renumber(String id, HashMap<String, Commit> commits,
+                                 HashSet<String> legacy,
+                                 HashMap<String, String> newIds) {
+        ArrayDeque<String> stack = new ArrayDeque<>();
+        stack.push(id);
+        while (!stack.isEmpty()) {
+            String top = stack.peek();
+            if (newIds.containsKey(top)) {
+                stack.pop();
+                continue;
+            }
+            Commit commit = commits.get(top);
+            if (commit == null) {
+                throw error("Missing commit %s.", top);
+            }
+            String parent1 = commit.getParentOne(),
+                parent2 = commit.getParentTwo();
+            if (parent1 != null && !newIds.containsKey(parent1)) {
+                stack.push(parent1);
+                continue;
+            }
+            if (parent2 != null && !newIds.containsKey(parent2)) {
+                stack.push(parent2);
+                continue;
+            }
+            String new1 = parent1 == null ? null : newIds.get(parent1),
+                new2 = parent2 == null ? null : newIds.get(parent2);
+            if (!legacy.contains(top) && Objects.equals(parent1, new1)
+                && Objects.equals(parent2, new2)) {
+                newIds.put(top, top);
+            } else {
+                Commit copy =
+                    new Commit(null, commit.getMessage(), new1, new2,
+                               commit.getTime(), commit.getZoneOffset(),
+                               commit.getTree(), null);
+                String newId = copy.createSha1();
+                ObjectStore.write(ObjectStore.Kind.COMMIT, newId,
+                                  copy.encode());
+                newIds.put(top, newId);
+            }
+            stack.pop();
+        }
+    }
+
+    /** Return the object of class EXPECTEDCLASS serialized in CONTENTS. */
+    private static <T extends Serializable> T read(byte[] contents,
+                                                   Class<T> expectedClass) {
+        try (ObjectInputStream in =
+                 new LegacyInputStream(new ByteArrayInputStream(contents))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** An object stream that reads the old gitlet.Commit and gitlet.Stage
+     *  classes as LegacyCommit and LegacyStage, which have the same
+     *  serialized fields. */
+    private static class LegacyInputStream extends ObjectInputStream {
+        /** A stream reading from IN. */
+        LegacyInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+            throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            switch (desc.getName()) {
+            case "gitlet.Commit":
+                return ObjectStreamClass.lookup(LegacyCommit.class);
+            case "gitlet.Stage":
+                return ObjectStreamClass.lookup(LegacyStage.class);
+            default:
+                return desc;
+            }
+        }
+    }
+
+    /** The fields of a commit as serialized by older versions. */
+    private static class LegacyCommit implements Serializable {
+        /** Message about commit. */
+        private String message;
+        /** Timestamp when commit was created. */
+        private String timestamp;
+        /** The unique sha1 hash for commit object. */
+        private String selfSha1;
+        /** The parentOne sha1 hash. */
+        private String parentOne;
+        /** The parentTwo sha1 hash. */
+        private String parentTwo;
+        /** Unused list of parents. */
+        private String[] parentList;
+        /** File that held the commit. */
+        private File currFile;
+        /** All the blob files hash with fileName as keys. */
+        private HashMap<String, String> blobHash;
+    }
+
+    /** The fields of a stage as serialized by older versions. */
+    private static class LegacyStage implements Serializable {
+        /** Staged added blob files with fileNames keys. */
+        private HashMap<String, String> addHash;
+        /** Staged deleted blob files with fileNames keys. */
+        private HashMap<String, String> deleteHash;
+        /** NonCategorized blob files with fileNames keys. */
+        private HashMap<String, String> nonCategorizedHash;
+    }
+}
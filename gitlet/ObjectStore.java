@@ -0,0 +1,922 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiPredicate;
+
+import static gitlet.Utils.*;
+
+/** The object database of a Gitlet repository.  Every blob, commit and
+ *  tree lives either as a loose file, such as BLOBS_DIR/ID.z or
+ *  COMMITS_DIR/ID.z, or inside a pack: an append-only
+ *  PACKS_DIR/pack-X.pack holding the contents of many objects back to
+ *  back, together with a sorted PACKS_DIR/pack-X.idx that maps each SHA-1
+ *  id to its offset and length in the pack.  New objects are always
+ *  written loose; repack() moves them into a single pack.  Packed objects
+ *  are read by offset from a channel that stays open for the rest of the
+ *  process.
+ *
+ *  Objects are stored compressed with the Codec configured for the
+ *  repository when they were written, as shown by the suffix of a loose
+ *  file or recorded in the pack index, and are always hashed and read in
+ *  their decoded form.  A compressed object starts with a header giving
+ *  its decoded length, so that size() need not decode it; objects
+ *  written by older versions lack one.  Reading and writing stream
+ *  through the codec, so an object is never held whole in memory unless
+ *  asked for as bytes.
+ *
+ *  A blob may instead be stored as a DELTA object of the same id, holding
+ *  the Delta that rebuilds it from an earlier revision.  Blobs are read
+ *  the same way in either form; rebuilding a blob reads its chain of bases
+ *  whole, and keeps recently rebuilt blobs in a cache for the deltas that
+ *  follow. */
+class ObjectStore {
+
+    /** The kinds of objects kept in the store, each with the directory
+     *  holding its loose objects. */
+    enum Kind {
+        /** File contents. */
+        BLOB(Command.BLOBS_DIR),
+        /** Serialized commits. */
+        COMMIT(Command.COMMITS_DIR),
+        /** Trees of file names and blob ids. */
+        TREE(Command.TREES_DIR),
+        /** Blobs stored as Deltas against other blobs. */
+        DELTA(Command.DELTAS_DIR);
+
+        /** A kind whose loose objects live in DIR. */
+        Kind(File dir) {
+            _dir = dir;
+        }
+
+        /** Return the directory holding loose objects of this kind. */
+        File dir() {
+            return _dir;
+        }
+
+        /** Directory of loose objects. */
+        private final File _dir;
+    }
+
+    /** Directory holding pack and index files. */
+    static final File PACKS_DIR = join(Command.GITLET, "packs");
+
+    /** Magic number at the start of every pack file. */
+    private static final int PACK_MAGIC = 0x4750414b;
+    /** Magic number at the start of every pack index file. */
+    private static final int INDEX_MAGIC = 0x47494458;
+    /** Current pack and index format version.  Version 1 entries hold
+     *  only the kind of each object; version 2 adds its codec in the high
+     *  bits of the same byte, so version 1 objects read as uncompressed;
+     *  version 3 widens the length of each object from 4 bytes to 8. */
+    private static final int VERSION = 3;
+    /** Length of a raw SHA-1 id in bytes. */
+    static final int ID_BYTES = UID_LENGTH / 2;
+    /** Length of one entry in a pack index: id, kind and codec, offset,
+     *  length. */
+    private static final int ENTRY_BYTES = ID_BYTES + 1 + 8 + 8;
+    /** Length of one entry in a pack index before version 3. */
+    private static final int OLD_ENTRY_BYTES = ID_BYTES + 1 + 8 + 4;
+    /** First byte of the header giving the decoded length of an object
+     *  stored compressed, which no Deflate or LZ coding begins with. */
+    private static final int LENGTH_MARK = 0xff;
+    /** Length of that header: LENGTH_MARK and the length as a long. */
+    private static final int LENGTH_HEADER_BYTES = 1 + 8;
+
+    /** Configuration key giving the longest chain of deltas to be read
+     *  to rebuild a blob; 0 turns off delta compression. */
+    static final String DELTA_DEPTH = "core.deltaDepth";
+    /** Default for DELTA_DEPTH. */
+    private static final int DEFAULT_DELTA_DEPTH = 10;
+    /** Size of the smallest blob stored as a delta. */
+    private static final long DELTA_MIN = 1 << 10;
+    /** Size of the largest blob stored as or used as the base of a
+     *  delta. */
+    private static final long DELTA_MAX = 1 << 26;
+    /** Total size of the rebuilt blobs kept for use as delta bases. */
+    private static final long BASE_CACHE_SIZE = 1 << 25;
+
+    /** Return true iff an object of kind KIND with id ID is stored.  A
+     *  blob may be stored as a delta. */
+    static boolean contains(Kind kind, String id) {
+        if (id == null || !isId(id)) {
+            return false;
+        }
+        return stored(kind, id) || kind == Kind.BLOB && stored(Kind.DELTA, id);
+    }
+
+    /** Return true iff an object of kind KIND with id ID, a complete id,
+     *  is stored loose or packed. */
+    private static boolean stored(Kind kind, String id) {
+        return looseFile(kind, id) != null || findPacked(kind, id) != null;
+    }
+
+    /** Return the contents of the object of kind KIND with id ID.  Throws
+     *  IllegalArgumentException if there is no such object. */
+    static byte[] read(Kind kind, String id) {
+        try (InputStream in = open(kind, id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw error("Could not read object %s: %s", id,
+                        excp.getMessage());
+        }
+    }
+
+    /** Return a stream of the decoded contents of the object of kind KIND
+     *  with id ID, which the caller must close.  Throws
+     *  IllegalArgumentException if there is no such object. */
+    static InputStream open(Kind kind, String id) {
+        File loose = isId(id) ? looseFile(kind, id) : null;
+        PackEntry entry =
+            isId(id) && loose == null ? findPacked(kind, id) : null;
+        try {
+            if (loose != null) {
+                return decoder(codecOf(loose),
+                               Files.newInputStream(loose.toPath()));
+            }
+            if (entry != null) {
+                return decoder(entry.codec,
+                               entry.pack.open(entry.offset, entry.length));
+            }
+        } catch (IOException excp) {
+            throw error("Could not read object %s: %s", id,
+                        excp.getMessage());
+        }
+        if (kind == Kind.BLOB && isId(id) && stored(Kind.DELTA, id)) {
+            return new ByteArrayInputStream(rebuild(id));
+        }
+        throw new IllegalArgumentException("no such object: " + id);
+    }
+
+    /** Return the length of the decoded contents of the object of kind
+     *  KIND with id ID, or -1 if it is not stored or its length is not
+     *  recorded, as for compressed objects written by older versions.  At
+     *  most the length header of the object is read, and a blob stored
+     *  as a delta is not rebuilt. */
+    static long size(Kind kind, String id) {
+        if (!isId(id)) {
+            return -1;
+        }
+        File loose = looseFile(kind, id);
+        PackEntry entry = loose == null ? findPacked(kind, id) : null;
+        if (loose == null && entry == null) {
+            if (kind == Kind.BLOB && stored(Kind.DELTA, id)) {
+                return Delta.length(read(Kind.DELTA, id));
+            }
+            return -1;
+        }
+        Codec codec = loose != null ? codecOf(loose) : entry.codec;
+        long length = loose != null ? loose.length() : entry.length;
+        if (codec == Codec.NONE) {
+            return length;
+        }
+        if (length < LENGTH_HEADER_BYTES) {
+            return -1;
+        }
+        try (DataInputStream in = new DataInputStream(
+                 loose != null ? Files.newInputStream(loose.toPath())
+                 : entry.pack.open(entry.offset, length))) {
+            return in.readUnsignedByte() == LENGTH_MARK ? in.readLong() : -1;
+        } catch (IOException excp) {
+            throw error("Could not read object %s: %s", id,
+                        excp.getMessage());
+        }
+    }
+
+    /** Return the contents of blob ID, which is stored, rebuilding it from
+     *  its chain of deltas if need be.  Rebuilt blobs are cached.  A chain
+     *  that is longer than Delta.MAX_DEPTH or returns to a blob already in
+     *  it is reported as corrupt. */
+    private static byte[] rebuild(String id) {
+        byte[] result = _bases.get(id);
+        List<String> chain = new ArrayList<>();
+        List<byte[]> deltas = new ArrayList<>();
+        String base = id;
+        while (result == null && stored(Kind.DELTA, base)) {
+            if (chain.size() > Delta.MAX_DEPTH || chain.contains(base)) {
+                throw error("Corrupt delta chain for blob %s.", id);
+            }
+            byte[] delta = read(Kind.DELTA, base);
+            chain.add(base);
+            deltas.add(delta);
+            base = Delta.base(delta);
+            result = _bases.get(base);
+        }
+        if (result == null) {
+            result = read(Kind.BLOB, base);
+            _bases.put(base, result);
+        }
+        for (int i = chain.size() - 1; i >= 0; i -= 1) {
+            result = Delta.apply(result, deltas.get(i));
+            _bases.put(chain.get(i), result);
+        }
+        return result;
+    }
+
+    /** Return the cache of rebuilt blobs. */
+    static LruCache<String, byte[]> baseCache() {
+        return _bases;
+    }
+
+    /** Return the number of deltas applied to rebuild blob ID. */
+    private static int depth(String id) {
+        if (stored(Kind.DELTA, id)) {
+            return Delta.depth(read(Kind.DELTA, id));
+        }
+        return 0;
+    }
+
+    /** Store blob ID, whose contents are SIZE bytes long, as a delta
+     *  against blob BASE, an earlier revision of the same file, if it is
+     *  loose, the delta is under half its size and the delta chain would
+     *  be no deeper than core.deltaDepth.  Otherwise leave it as it is.
+     *  ID must have just been inserted by the caller: a blob that was
+     *  already stored may be the base of other deltas, and replacing it
+     *  by a delta could make a cycle of deltas that rebuilds neither.  A
+     *  BASE whose own chain reaches ID is refused for the same reason. */
+    static void deltify(String id, String base, long size) {
+        int maxDepth = Math.min(Delta.MAX_DEPTH,
+            Config.getInt(DELTA_DEPTH, DEFAULT_DELTA_DEPTH));
+        File loose = looseFile(Kind.BLOB, id);
+        if (maxDepth <= 0 || loose == null || base == null
+            || base.equals(id) || size < DELTA_MIN || size > DELTA_MAX
+            || !contains(Kind.BLOB, base)) {
+            return;
+        }
+        String b = base;
+        for (int n = 0; b != null; n += 1) {
+            if (b.equals(id) || n > Delta.MAX_DEPTH) {
+                return;
+            }
+            b = deltaBase(b);
+        }
+        int depth = depth(base) + 1;
+        if (depth > maxDepth) {
+            return;
+        }
+        byte[] baseContents = rebuild(base);
+        if (baseContents.length > DELTA_MAX) {
+            return;
+        }
+        byte[] target = read(Kind.BLOB, id);
+        byte[] delta = Delta.create(base, depth, baseContents, target,
+                                    target.length / 2);
+        if (delta != null) {
+            write(Kind.DELTA, id, delta);
+            loose.delete();
+        }
+    }
+
+    /** Write the contents of the object of kind KIND with id ID to the
+     *  file DEST, streaming it through its codec. */
+    static void copyTo(Kind kind, String id, File dest) {
+        try (InputStream in = open(kind, id);
+             OutputStream out = Files.newOutputStream(dest.toPath())) {
+            in.transferTo(out);
+        } catch (IOException excp) {
+            throw error("Could not write %s: %s", dest.getName(),
+                        excp.getMessage());
+        }
+    }
+
+    /** Store CONTENTS as the object of kind KIND with id ID, unless it is
+     *  already present. */
+    static void write(Kind kind, String id, byte[] contents) {
+        if (contains(kind, id)) {
+            return;
+        }
+        kind.dir().mkdir();
+        Codec codec = Codec.configured();
+        File tmp = encode(kind, new ByteArrayInputStream(contents), codec,
+                          null);
+        moveIntoPlace(tmp, looseFile(kind, id, codec));
+    }
+
+    /** Store the contents of SOURCE as an object of kind KIND, returning
+     *  its id, the SHA-1 hash of those contents.  SOURCE is read once, in
+     *  blocks, hashing each block as it is encoded into a temporary file
+     *  that is then renamed into place, so that files of any size can be
+     *  stored in a small heap and a partly written object is never
+     *  visible. */
+    static String insert(Kind kind, File source) {
+        return insert(kind, source, null);
+    }
+
+    /** As for insert(KIND, SOURCE), but also adding the id to CREATED,
+     *  unless it is null, if the object was not already stored.  CREATED
+     *  may be shared by several threads. */
+    static String insert(Kind kind, File source, Set<String> created) {
+        kind.dir().mkdir();
+        Codec codec = Codec.configured();
+        MessageDigest md = newSha1();
+        File tmp;
+        try (InputStream in = Files.newInputStream(source.toPath())) {
+            tmp = encode(kind, in, codec, md);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String id = toHex(md.digest());
+        if (contains(kind, id)) {
+            tmp.delete();
+        } else {
+            moveIntoPlace(tmp, looseFile(kind, id, codec));
+            if (created != null) {
+                created.add(id);
+            }
+        }
+        return id;
+    }
+
+    /** Return the ids of all stored objects of kind KIND, loose or packed,
+     *  in lexicographic order. */
+    static List<String> ids(Kind kind) {
+        TreeSet<String> result = new TreeSet<>();
+        List<String> loose = plainFilenamesIn(kind.dir());
+        if (loose != null) {
+            for (String name : loose) {
+                int dot = name.indexOf('.');
+                if (dot > 0 && codecOf(name) != null
+                    && isId(name.substring(0, dot))) {
+                    result.add(name.substring(0, dot));
+                }
+            }
+        }
+        for (Pack pack : packs()) {
+            pack.collectIds(kind, result);
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Move every loose object, together with the contents of all existing
+     *  packs, into a single new pack.  Returns the number of objects in the
+     *  new pack. */
+    static int repack() {
+        TreeMap<String, EnumSet<Kind>> all = new TreeMap<>();
+        int count = 0;
+        for (Kind kind : Kind.values()) {
+            for (String id : ids(kind)) {
+                all.computeIfAbsent(id, k -> EnumSet.noneOf(Kind.class))
+                    .add(kind);
+                count += 1;
+            }
+        }
+        if (all.isEmpty()) {
+            return 0;
+        }
+        pack(all);
+        return count;
+    }
+
+    /** Return the id of the blob that blob ID is stored as a delta
+     *  against, or null if it is stored whole. */
+    static String deltaBase(String id) {
+        if (stored(Kind.DELTA, id)) {
+            return Delta.base(read(Kind.DELTA, id));
+        }
+        return null;
+    }
+
+    /** Delete every object whose id is not in LIVE and that was stored
+     *  before CUTOFF, in milliseconds since the epoch, along with
+     *  temporary files left before then by interrupted writes.  Packs
+     *  holding such objects are replaced by one pack without them; the
+     *  objects of packs made since CUTOFF are all kept.  Return the
+     *  number of bytes freed. */
+    static long prune(Set<String> live, long cutoff) {
+        long freed = 0;
+        for (Kind kind : Kind.values()) {
+            List<String> names = plainFilenamesIn(kind.dir());
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                File file = join(kind.dir(), name);
+                int dot = name.indexOf('.');
+                boolean dead = name.startsWith("tmp-")
+                    || dot > 0 && codecOf(name) != null
+                       && isId(name.substring(0, dot))
+                       && !live.contains(name.substring(0, dot));
+                long length = file.length();
+                if (dead && file.lastModified() < cutoff && file.delete()) {
+                    freed += length;
+                }
+            }
+        }
+        return freed + dropPacked((kind, id) -> !live.contains(id), cutoff);
+    }
+
+    /** Delete the objects of kind KIND whose ids are in IDS, whether they
+     *  are loose or packed. */
+    static void delete(Kind kind, Set<String> ids) {
+        for (String id : ids) {
+            for (Codec codec : Codec.values()) {
+                looseFile(kind, id, codec).delete();
+            }
+        }
+        dropPacked((k, id) -> k == kind && ids.contains(id), Long.MAX_VALUE);
+    }
+
+    /** Replace the packs by one without the objects for which DEAD, given
+     *  their kind and id, is true, keeping all those of packs made since
+     *  CUTOFF, in milliseconds since the epoch.  Return the number of
+     *  bytes freed. */
+    private static long dropPacked(BiPredicate<Kind, String> dead,
+                                   long cutoff) {
+        TreeMap<String, EnumSet<Kind>> kept = new TreeMap<>();
+        boolean dropped = false;
+        for (Pack pack : packs()) {
+            boolean old = pack.file().lastModified() < cutoff;
+            for (Kind kind : Kind.values()) {
+                TreeSet<String> ids = new TreeSet<>();
+                pack.collectIds(kind, ids);
+                for (String id : ids) {
+                    if (!old || !dead.test(kind, id)) {
+                        kept.computeIfAbsent(id,
+                                             k -> EnumSet.noneOf(Kind.class))
+                            .add(kind);
+                    } else {
+                        dropped = true;
+                    }
+                }
+            }
+        }
+        long freed = 0;
+        if (dropped) {
+            long before = 0, after = 0;
+            for (File file : packFiles()) {
+                before += file.length();
+            }
+            if (kept.isEmpty()) {
+                closePacks();
+                for (File file : packFiles()) {
+                    file.delete();
+                }
+            } else {
+                pack(kept);
+            }
+            for (File file : packFiles()) {
+                after += file.length();
+            }
+            freed += before - after;
+        }
+        return freed;
+    }
+
+    /** Replace all packs by a single new pack holding the objects in ALL,
+     *  a map from ids to the kinds of the objects stored under them, each
+     *  taken from its loose file if it has one and otherwise from an
+     *  existing pack, and delete the loose copies of those objects. */
+    private static void pack(TreeMap<String, EnumSet<Kind>> all) {
+        int count = 0;
+        for (EnumSet<Kind> kinds : all.values()) {
+            count += kinds.size();
+        }
+        PACKS_DIR.mkdir();
+        String name = "pack-" + sha1(new ArrayList<Object>(all.keySet()));
+        File packFile = join(PACKS_DIR, name + ".pack");
+        File indexFile = join(PACKS_DIR, name + ".idx");
+        File tmpPack = join(PACKS_DIR, name + ".pack.tmp");
+        File tmpIndex = join(PACKS_DIR, name + ".idx.tmp");
+        try {
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            DataOutputStream idx = new DataOutputStream(index);
+            idx.writeInt(INDEX_MAGIC);
+            idx.writeInt(VERSION);
+            idx.writeInt(count);
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(tmpPack.toPath())))) {
+                out.writeInt(PACK_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(count);
+                long offset = 3 * 4;
+                for (Map.Entry<String, EnumSet<Kind>> object
+                         : all.entrySet()) {
+                    for (Kind kind : object.getValue()) {
+                        String id = object.getKey();
+                        File loose = looseFile(kind, id);
+                        Codec codec;
+                        long length;
+                        InputStream in;
+                        if (loose != null) {
+                            codec = codecOf(loose);
+                            length = loose.length();
+                            in = Files.newInputStream(loose.toPath());
+                        } else {
+                            PackEntry entry = findPacked(kind, id);
+                            codec = entry.codec;
+                            length = entry.length;
+                            in = entry.pack.open(entry.offset, entry.length);
+                        }
+                        try (in) {
+                            in.transferTo(out);
+                        }
+                        idx.write(toRawId(id));
+                        idx.writeByte(kind.ordinal() | codec.code() << 4);
+                        idx.writeLong(offset);
+                        idx.writeLong(length);
+                        offset += length;
+                    }
+                }
+            }
+            idx.close();
+            writeContents(tmpIndex, index.toByteArray());
+        } catch (IOException excp) {
+            throw error("Could not write pack: %s", excp.getMessage());
+        }
+        closePacks();
+        tmpPack.renameTo(packFile);
+        tmpIndex.renameTo(indexFile);
+        for (File old : packFiles()) {
+            if (!old.getName().startsWith(name + ".")) {
+                old.delete();
+            }
+        }
+        for (Map.Entry<String, EnumSet<Kind>> object : all.entrySet()) {
+            for (Kind kind : object.getValue()) {
+                for (Codec codec : Codec.values()) {
+                    looseFile(kind, object.getKey(), codec).delete();
+                }
+            }
+        }
+    }
+
+    /** Return the loose file holding object ID of kind KIND, in whichever
+     *  codec it was written, or null if it is not loose. */
+    static File looseFile(Kind kind, String id) {
+        for (Codec codec : Codec.values()) {
+            File file = looseFile(kind, id, codec);
+            if (file.isFile()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /** Return the loose file that would hold object ID of kind KIND encoded
+     *  with CODEC. */
+    static File looseFile(Kind kind, String id, Codec codec) {
+        return join(kind.dir(), id + "." + codec.suffix());
+    }
+
+    /** Return the codec of the loose object file FILE. */
+    private static Codec codecOf(File file) {
+        return codecOf(file.getName());
+    }
+
+    /** Return the codec of the loose object file named NAME, or null if
+     *  NAME has no codec's suffix. */
+    private static Codec codecOf(String name) {
+        String suffix = name.substring(name.lastIndexOf('.') + 1);
+        for (Codec codec : Codec.values()) {
+            if (codec.suffix().equals(suffix)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /** Encode the contents of IN with CODEC into a new temporary file among
+     *  the loose objects of kind KIND, and return that file.  Unless it is
+     *  null, MD is updated with the contents as they are read.  Unless
+     *  CODEC is NONE, the coding is preceded by a header giving the length
+     *  of the contents, which is filled in once they have all been read. */
+    private static File encode(Kind kind, InputStream in, Codec codec,
+                               MessageDigest md) {
+        File tmp = null;
+        try {
+            tmp = File.createTempFile("tmp-", ".obj", kind.dir());
+            OutputStream file = new BufferedOutputStream(
+                Files.newOutputStream(tmp.toPath()), BUFFER_SIZE);
+            if (codec != Codec.NONE) {
+                file.write(LENGTH_MARK);
+                file.write(new byte[LENGTH_HEADER_BYTES - 1]);
+            }
+            long length = 0;
+            try (OutputStream out = codec.encoder(file)) {
+                byte[] buf = new byte[BUFFER_SIZE];
+                for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                    if (md != null) {
+                        md.update(buf, 0, n);
+                    }
+                    out.write(buf, 0, n);
+                    length += n;
+                }
+            }
+            if (codec != Codec.NONE) {
+                try (RandomAccessFile f = new RandomAccessFile(tmp, "rw")) {
+                    f.seek(1);
+                    f.writeLong(length);
+                }
+            }
+            return tmp;
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return a stream of the contents coded with CODEC in RAW, skipping
+     *  the length header if there is one. */
+    private static InputStream decoder(Codec codec, InputStream raw)
+        throws IOException {
+        InputStream in = new BufferedInputStream(raw, BUFFER_SIZE);
+        if (codec != Codec.NONE) {
+            in.mark(1);
+            if (in.read() == LENGTH_MARK) {
+                in.skipNBytes(LENGTH_HEADER_BYTES - 1);
+            } else {
+                in.reset();
+            }
+        }
+        return codec.decoder(in);
+    }
+
+    /** Rename the temporary file TMP to DEST in one step. */
+    private static void moveIntoPlace(File tmp, File dest) {
+        try {
+            Files.move(tmp.toPath(), dest.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true iff ID is a complete hexadecimal SHA-1 id. */
+    static boolean isId(String id) {
+        if (id.length() != UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i += 1) {
+            if (Character.digit(id.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the 20-byte binary form of the hexadecimal id ID. */
+    static byte[] toRawId(String id) {
+        byte[] result = new byte[ID_BYTES];
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            result[i] = (byte) Integer.parseInt(id.substring(2 * i,
+                    2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Return the hexadecimal form of the 20-byte id in RAW starting at
+     *  OFFSET. */
+    static String fromRawId(byte[] raw, int offset) {
+        StringBuilder result = new StringBuilder(UID_LENGTH);
+        for (int i = offset; i < offset + ID_BYTES; i += 1) {
+            result.append(Character.forDigit((raw[i] >> 4) & 0xf, 16));
+            result.append(Character.forDigit(raw[i] & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    /** Return the packed entry for object ID of kind KIND, or null. */
+    private static PackEntry findPacked(Kind kind, String id) {
+        byte[] raw = toRawId(id);
+        for (Pack pack : packs()) {
+            PackEntry entry = pack.find(kind, raw);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /** Return all pack and index files, including partial ones. */
+    private static List<File> packFiles() {
+        List<File> result = new ArrayList<>();
+        List<String> names = plainFilenamesIn(PACKS_DIR);
+        if (names != null) {
+            for (String name : names) {
+                result.add(join(PACKS_DIR, name));
+            }
+        }
+        return result;
+    }
+
+    /** Return the packs of this repository, opening them on first use.
+     *  Objects may be read from several threads at once. */
+    private static synchronized List<Pack> packs() {
+        if (_packs == null) {
+            List<Pack> packs = new ArrayList<>();
+            List<String> names = plainFilenamesIn(PACKS_DIR);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".idx")) {
+                        String base = name.substring(0, name.length() - 4);
+                        File pack = join(PACKS_DIR, base + ".pack");
+                        if (pack.isFile()) {
+                            packs.add(new Pack(join(PACKS_DIR, name), pack));
+                        }
+                    }
+                }
+            }
+            _packs = packs;
+        }
+        return _packs;
+    }
+
+    /** Close all open packs, so that they are reopened on next use. */
+    static synchronized void closePacks() {
+        if (_packs != null) {
+            for (Pack pack : _packs) {
+                pack.close();
+            }
+            _packs = null;
+        }
+    }
+
+    /** The location of one object inside a pack. */
+    private static class PackEntry {
+        /** An entry for LENGTH bytes at OFFSET in PACK, encoded with
+         *  CODEC. */
+        PackEntry(Pack pack, Codec codec, long offset, long length) {
+            this.pack = pack;
+            this.codec = codec;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /** The containing pack. */
+        private final Pack pack;
+        /** The encoding of the object's contents. */
+        private final Codec codec;
+        /** Position of the object's contents in the pack. */
+        private final long offset;
+        /** Length of the object's contents. */
+        private final long length;
+    }
+
+    /** An open pack file and its index. */
+    private static class Pack {
+        /** Open the pack PACKFILE, whose index is INDEXFILE. */
+        Pack(File indexFile, File packFile) {
+            byte[] index = readContents(indexFile);
+            try {
+                DataInputStream in = new DataInputStream(
+                        new ByteArrayInputStream(index));
+                int version = 0;
+                if (in.readInt() == INDEX_MAGIC) {
+                    version = in.readInt();
+                }
+                if (version < 1 || version > VERSION) {
+                    throw error("Bad pack index: %s", indexFile.getName());
+                }
+                _entryBytes = version < 3 ? OLD_ENTRY_BYTES : ENTRY_BYTES;
+                _count = in.readInt();
+                _entries = Arrays.copyOfRange(index, 3 * 4, index.length);
+                _channel = new RandomAccessFile(packFile, "r").getChannel();
+                _file = packFile;
+            } catch (IOException excp) {
+                throw error("Could not open pack: %s", excp.getMessage());
+            }
+        }
+
+        /** Return the pack file. */
+        File file() {
+            return _file;
+        }
+
+        /** Return the entry for raw id RAW of kind KIND, or null.  Objects
+         *  of different kinds may share an id, and are then adjacent. */
+        PackEntry find(Kind kind, byte[] raw) {
+            int lo = 0, hi = _count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compareId(mid, raw) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (int k = lo; k < _count && compareId(k, raw) == 0; k += 1) {
+                ByteBuffer entry = ByteBuffer.wrap(_entries,
+                        k * _entryBytes + ID_BYTES, _entryBytes - ID_BYTES);
+                int type = entry.get();
+                if ((type & 0xf) == kind.ordinal()) {
+                    long offset = entry.getLong();
+                    long length = _entryBytes == ENTRY_BYTES
+                        ? entry.getLong() : entry.getInt();
+                    return new PackEntry(this, Codec.fromCode(type >>> 4),
+                            offset, length);
+                }
+            }
+            return null;
+        }
+
+        /** Add the hexadecimal ids of all objects of kind KIND in this pack
+         *  to RESULT. */
+        void collectIds(Kind kind, TreeSet<String> result) {
+            for (int i = 0; i < _count; i += 1) {
+                if ((_entries[i * _entryBytes + ID_BYTES] & 0xf)
+                    == kind.ordinal()) {
+                    result.add(fromRawId(_entries, i * _entryBytes));
+                }
+            }
+        }
+
+        /** Return a stream of the LENGTH bytes starting at OFFSET in the
+         *  pack, read a block at a time. */
+        InputStream open(long offset, long length) {
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    byte[] b = new byte[1];
+                    return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len)
+                    throws IOException {
+                    if (len == 0) {
+                        return 0;
+                    }
+                    if (_pos == length) {
+                        return -1;
+                    }
+                    ByteBuffer buf = ByteBuffer.wrap(b, off,
+                            (int) Math.min(len, length - _pos));
+                    int n = _channel.read(buf, offset + _pos);
+                    if (n < 0) {
+                        throw new IOException("truncated pack file");
+                    }
+                    _pos += n;
+                    return n;
+                }
+
+                /** Number of bytes read so far. */
+                private long _pos;
+            };
+        }
+
+        /** Release the open pack file. */
+        void close() {
+            try {
+                _channel.close();
+            } catch (IOException excp) {
+                /* Ignore: the pack is no longer used. */
+            }
+        }
+
+        /** Compare the id of entry K with RAW, as unsigned bytes. */
+        private int compareId(int k, byte[] raw) {
+            int base = k * _entryBytes;
+            for (int i = 0; i < ID_BYTES; i += 1) {
+                int c = (_entries[base + i] & 0xff) - (raw[i] & 0xff);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return 0;
+        }
+
+        /** Number of objects in the pack. */
+        private int _count;
+        /** Length of each entry in the index. */
+        private int _entryBytes;
+        /** The raw index entries, sorted by id. */
+        private byte[] _entries;
+        /** The open pack file. */
+        private FileChannel _channel;
+        /** The pack file. */
+        private File _file;
+    }
+
+    /** Recently rebuilt blobs by id. */
+    private static final LruCache<String, byte[]> _bases =
+        new LruCache<>(BASE_CACHE_SIZE, contents -> contents.length);
+
+    /** The open packs, or null if not yet loaded. */
+    private static List<Pack> _packs;
+}
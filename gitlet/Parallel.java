@@ -0,0 +1,74 @@
+package gitlet;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/** Data-parallel loops over the working tree, run on a fork/join pool
+ *  whose size is set by Config.threads(), read at every loop.  File
+ *  system work is dominated by waiting on I/O, so the pool size bounds
+ *  the number of files being read at once rather than matching the
+ *  number of processors. */
+class Parallel {
+
+    /** Fewest iterations worth handing to a separate task. */
+    private static final int GRAIN = 4;
+
+    /** Call BODY on 0 .. N-1, in parallel and in no particular order,
+     *  returning once all calls have finished.  Any exception thrown by
+     *  BODY is rethrown. */
+    static void forEach(int n, IntConsumer body) {
+        if (n < 2 * GRAIN || Config.threads() == 1) {
+            for (int i = 0; i < n; i += 1) {
+                body.accept(i);
+            }
+            return;
+        }
+        pool().invoke(new Range(0, n, body));
+    }
+
+    /** Return the pool, creating it on first use and again whenever
+     *  Config.threads() has changed since, as it may between the commands
+     *  run by one daemon. */
+    private static synchronized ForkJoinPool pool() {
+        int threads = Config.threads();
+        if (_pool == null || _pool.getParallelism() != threads) {
+            if (_pool != null) {
+                _pool.shutdown();
+            }
+            _pool = new ForkJoinPool(threads);
+        }
+        return _pool;
+    }
+
+    /** A task applying a body to a range of indices. */
+    private static class Range extends RecursiveAction {
+        /** Apply BODY to LO .. HI-1. */
+        Range(int lo, int hi, IntConsumer body) {
+            _lo = lo;
+            _hi = hi;
+            _body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= GRAIN) {
+                for (int i = _lo; i < _hi; i += 1) {
+                    _body.accept(i);
+                }
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Range(_lo, mid, _body),
+                          new Range(mid, _hi, _body));
+            }
+        }
+
+        /** Bounds of the range. */
+        private final int _lo, _hi;
+        /** The loop body. */
+        private final IntConsumer _body;
+    }
+
+    /** The shared pool, or null if not yet created. */
+    private static ForkJoinPool _pool;
+}
@@ -0,0 +1,43 @@
+package gitlet;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Parallel. */
+public class ParallelTest {
+
+    /** Check that Parallel.forEach calls its body once on each of
+     *  0 .. N-1. */
+    private static void checkForEach(int n) {
+        AtomicIntegerArray calls = new AtomicIntegerArray(n);
+        Parallel.forEach(n, i -> calls.incrementAndGet(i));
+        for (int i = 0; i < n; i += 1) {
+            assertEquals(1, calls.get(i));
+        }
+    }
+
+    @Test
+    public void testForEach() {
+        checkForEach(0);
+        checkForEach(1);
+        checkForEach(7);
+        checkForEach(8);
+        checkForEach(1000);
+    }
+
+    @Test
+    public void testException() {
+        try {
+            Parallel.forEach(100, i -> {
+                if (i == 57) {
+                    throw new GitletException("bad file");
+                }
+            });
+            fail("exception not rethrown");
+        } catch (GitletException excp) {
+            assertEquals("bad file", excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** Reachability bitmaps, as in Git's pack bitmaps.  The bitmap of a
+ *  commit has a bit set for the commit-graph position of each commit it
+ *  reaches: itself and all its ancestors.  Bitmaps are kept for the tips
+ *  of all branches and for checkpoints, commits at every CHECKPOINT-th
+ *  generation that were once tips, so that whether A is an ancestor of B,
+ *  and which commits B reaches but A does not, are found by bitmap
+ *  operations rather than by walking history.  The bitmap of any other
+ *  commit is built by walking back only as far as the nearest commits
+ *  with bitmaps.  A bitmap describes a commit that never changes, so it
+ *  is never stale; update() makes sure that the current branch tips have
+ *  bitmaps, each built from its parents' after a commit or merge, and
+ *  drops those of former tips.  Each bitmap is saved with the id and
+ *  position of its commit, and all are discarded if the commit graph no
+ *  longer has that commit at that position. */
+class Reachability {
+
+    /** File holding the bitmaps. */
+    static final File BITMAPS_FILE = join(Command.GITLET, "bitmaps");
+
+    /** Magic number at the start of the bitmap file. */
+    private static final int MAGIC = 0x47424d50;
+    /** Current bitmap file format version. */
+    private static final int VERSION = 1;
+    /** Generation interval of the checkpoints that are kept. */
+    private static final int CHECKPOINT = 256;
+    /** Largest number of checkpoints kept. */
+    private static final int MAX_CHECKPOINTS = 32;
+
+    /** An index with no bitmaps. */
+    private Reachability() {
+        _bitmaps = new HashMap<>();
+    }
+
+    /** Return the bitmap index of this repository. */
+    static Reachability get() {
+        if (_index == null) {
+            _index = new Reachability();
+            _index.load();
+        }
+        return _index;
+    }
+
+    /** Forget the index, so that it is reread on next use. */
+    static void close() {
+        _index = null;
+    }
+
+    /** Return true iff commit ANCESTOR is DESCENDANT or one of its
+     *  ancestors. */
+    boolean isAncestor(String ancestor, String descendant) {
+        CommitGraph graph = CommitGraph.get();
+        return reach(graph.position(descendant))
+            .contains(graph.position(ancestor));
+    }
+
+    /** Return the commit-graph positions of the commits reachable from
+     *  commit TO but not from commit FROM. */
+    Bitmap only(String to, String from) {
+        CommitGraph graph = CommitGraph.get();
+        return reach(graph.position(to)).andNot(reach(graph.position(from)));
+    }
+
+    /** Return the bitmap of the commits reachable from the commit at POS,
+     *  building it from the nearest stored bitmaps if it has none. */
+    Bitmap reach(int pos) {
+        Bitmap stored = _bitmaps.get(pos);
+        if (stored != null) {
+            return stored;
+        }
+        CommitGraph graph = CommitGraph.get();
+        Bitmap result = new Bitmap();
+        PriorityQueue<Integer> queue =
+            new PriorityQueue<>(Collections.reverseOrder());
+        HashSet<Integer> queued = new HashSet<>();
+        queue.add(pos);
+        while (!queue.isEmpty()) {
+            int c = queue.remove();
+            if (result.contains(c)) {
+                continue;
+            }
+            Bitmap bitmap = _bitmaps.get(c);
+            if (bitmap != null) {
+                result = result.or(bitmap);
+                continue;
+            }
+            result.add(c);
+            int[] parents = { graph.parentOne(c), graph.parentTwo(c) };
+            for (int p : parents) {
+                if (p != CommitGraph.NONE && queued.add(p)) {
+                    queue.add(p);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Make sure that the tip of every branch has a bitmap, dropping those
+     *  of commits that are neither tips nor checkpoints, and save the
+     *  index if it changed. */
+    void update() {
+        CommitGraph graph = CommitGraph.get();
+        HashMap<Integer, Bitmap> tips = new HashMap<>();
+        List<String> branches = plainFilenamesIn(Command.BRANCHES_DIR);
+        if (branches != null) {
+            for (String branch : branches) {
+                int pos = graph.position(readContentsAsString(
+                        join(Command.BRANCHES_DIR, branch)));
+                tips.put(pos, reach(pos));
+            }
+        }
+        TreeMap<Integer, Bitmap> checkpoints =
+            new TreeMap<>(Collections.reverseOrder());
+        for (Map.Entry<Integer, Bitmap> e : _bitmaps.entrySet()) {
+            if (!tips.containsKey(e.getKey())
+                && graph.generation(e.getKey()) % CHECKPOINT == 0) {
+                checkpoints.put(e.getKey(), e.getValue());
+            }
+        }
+        for (Map.Entry<Integer, Bitmap> e : tips.entrySet()) {
+            if (graph.generation(e.getKey()) % CHECKPOINT == 0) {
+                checkpoints.put(e.getKey(), e.getValue());
+            }
+        }
+        HashMap<Integer, Bitmap> kept = new HashMap<>(tips);
+        int n = 0;
+        for (Map.Entry<Integer, Bitmap> e : checkpoints.entrySet()) {
+            if (n == MAX_CHECKPOINTS) {
+                break;
+            }
+            kept.put(e.getKey(), e.getValue());
+            n += 1;
+        }
+        if (!kept.keySet().equals(_bitmaps.keySet())) {
+            _bitmaps = kept;
+            save();
+        }
+    }
+
+    /** Read the bitmaps from BITMAPS_FILE, if it exists. */
+    private void load() {
+        if (!BITMAPS_FILE.isFile()) {
+            return;
+        }
+        CommitGraph graph = CommitGraph.get();
+        DataInputStream in = new DataInputStream(
+            new ByteArrayInputStream(readContents(BITMAPS_FILE)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            int n = in.readInt();
+            for (int i = 0; i < n; i += 1) {
+                String id = readId(in);
+                int pos = in.readInt();
+                if (graph.position(id) != pos) {
+                    _bitmaps.clear();
+                    return;
+                }
+                _bitmaps.put(pos, Bitmap.read(in));
+            }
+        } catch (IOException excp) {
+            _bitmaps.clear();
+        }
+    }
+
+    /** Write the bitmaps to BITMAPS_FILE. */
+    private void save() {
+        CommitGraph graph = CommitGraph.get();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_bitmaps.size());
+            for (int pos : new TreeMap<>(_bitmaps).keySet()) {
+                writeId(out, graph.id(pos));
+                out.writeInt(pos);
+                _bitmaps.get(pos).write(out);
+            }
+            out.close();
+        } catch (IOException excp) {
+            throw error("Internal error writing bitmaps.");
+        }
+        File tmp = new File(BITMAPS_FILE.getPath() + ".tmp");
+        writeContents(tmp, bytes.toByteArray());
+        tmp.renameTo(BITMAPS_FILE);
+    }
+
+    /** Bitmaps by commit-graph position. */
+    private HashMap<Integer, Bitmap> _bitmaps;
+
+    /** The index of this repository, or null if not yet read. */
+    private static Reachability _index;
+}
@@ -0,0 +1,190 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/** Rename detection between two trees, as in git diff -M.  A file
+ *  deleted by a change and a file added by it are paired as a rename if
+ *  they have the same blob id, or else if their contents are at least
+ *  MIN_SIMILARITY percent alike.  Similarity is measured as in Git: each
+ *  file is summarized by the number of bytes in lines with each hash,
+ *  and the bytes in lines common to both, counted with multiplicity, are
+ *  taken as a percentage of the larger file.  Pairs are chosen greedily,
+ *  most similar first, and each file is used at most once. */
+class Renames {
+
+    /** Least similarity, as a percentage, of a rename. */
+    static final int MIN_SIMILARITY = 50;
+    /** Largest number of deleted-added pairs whose contents are compared;
+     *  beyond this only renames with identical contents are found. */
+    static final int MAX_PAIRS = 100_000;
+
+    /** A rename of file FROM, blob BEFORE, to file TO, blob AFTER. */
+    static class Rename {
+        /** A rename of FROM, with blob BEFORE, to TO, with blob AFTER,
+         *  whose contents are SIMILARITY percent alike. */
+        Rename(String from, String before, String to, String after,
+               int similarity) {
+            this.from = from;
+            this.before = before;
+            this.to = to;
+            this.after = after;
+            this.similarity = similarity;
+        }
+
+        /** The old file name. */
+        final String from;
+        /** The blob id of the old file. */
+        final String before;
+        /** The new file name. */
+        final String to;
+        /** The blob id of the new file. */
+        final String after;
+        /** The percentage similarity of the two files. */
+        final int similarity;
+    }
+
+    /** Return the renames among CHANGES, sorted by old file name. */
+    static List<Rename> find(List<Tree.Change> changes) {
+        List<Tree.Change> deleted = new ArrayList<>();
+        List<Tree.Change> added = new ArrayList<>();
+        for (Tree.Change change : changes) {
+            if (change.after == null) {
+                deleted.add(change);
+            } else if (change.before == null) {
+                added.add(change);
+            }
+        }
+        List<Rename> result = new ArrayList<>();
+        HashMap<String, Tree.Change> byBlob = new HashMap<>();
+        for (Tree.Change change : deleted) {
+            byBlob.putIfAbsent(change.before, change);
+        }
+        HashSet<String> used = new HashSet<>();
+        for (Tree.Change change : added) {
+            Tree.Change source = byBlob.remove(change.after);
+            if (source != null) {
+                result.add(new Rename(source.path, source.before,
+                                      change.path, change.after, 100));
+                used.add(source.path);
+                used.add(change.path);
+            }
+        }
+        deleted.removeIf(c -> used.contains(c.path));
+        added.removeIf(c -> used.contains(c.path));
+        if (!deleted.isEmpty() && !added.isEmpty()
+            && (long) deleted.size() * added.size() <= MAX_PAIRS) {
+            result.addAll(similar(deleted, added));
+        }
+        result.sort(Comparator.comparing(r -> r.from));
+        return result;
+    }
+
+    /** Return the percentage similarity of files with contents A and B,
+     *  as used to find renames. */
+    static int similarity(byte[] a, byte[] b) {
+        return new Signature(a).similarity(new Signature(b));
+    }
+
+    /** Return the renames of files in DELETED to files in ADDED whose
+     *  contents are alike. */
+    private static List<Rename> similar(List<Tree.Change> deleted,
+                                        List<Tree.Change> added) {
+        Signature[] sources = signatures(deleted, true);
+        Signature[] targets = signatures(added, false);
+        List<Rename> candidates = new ArrayList<>();
+        for (int i = 0; i < sources.length; i += 1) {
+            for (int j = 0; j < targets.length; j += 1) {
+                if (sources[i] == null || targets[j] == null) {
+                    continue;
+                }
+                int score = sources[i].similarity(targets[j]);
+                if (score >= MIN_SIMILARITY) {
+                    candidates.add(new Rename(
+                        deleted.get(i).path, deleted.get(i).before,
+                        added.get(j).path, added.get(j).after, score));
+                }
+            }
+        }
+        candidates.sort(Comparator.comparingInt((Rename r) -> -r.similarity)
+                        .thenComparing(r -> r.from)
+                        .thenComparing(r -> r.to));
+        List<Rename> result = new ArrayList<>();
+        HashSet<String> used = new HashSet<>();
+        for (Rename rename : candidates) {
+            if (!used.contains(rename.from) && !used.contains(rename.to)) {
+                used.add(rename.from);
+                used.add(rename.to);
+                result.add(rename);
+            }
+        }
+        return result;
+    }
+
+    /** Return the signatures of the blobs of CHANGES, before the change
+     *  if BEFORE, else after it, read in parallel.  Binary and very large
+     *  blobs, which are only renamed if unchanged, get null. */
+    private static Signature[] signatures(List<Tree.Change> changes,
+                                          boolean before) {
+        Signature[] result = new Signature[changes.size()];
+        Parallel.forEach(result.length, i -> {
+            Tree.Change change = changes.get(i);
+            String id = before ? change.before : change.after;
+            if (Contents.isTextBlob(id)) {
+                result[i] = new Signature(
+                    ObjectStore.read(ObjectStore.Kind.BLOB, id));
+            }
+        });
+        return result;
+    }
+
+    /** A summary of the contents of a file: the number of bytes in its
+     *  lines, by line hash. */
+    private static class Signature {
+        /** The signature of CONTENTS. */
+        Signature(byte[] contents) {
+            _size = contents.length;
+            int start = 0;
+            for (int i = 0; i < contents.length; i += 1) {
+                if (contents[i] == '\n' || i == contents.length - 1) {
+                    int len = i + 1 - start;
+                    int hash = 1;
+                    for (int k = start; k <= i; k += 1) {
+                        hash = 31 * hash + contents[k];
+                    }
+                    _bytes.merge(hash, len, Integer::sum);
+                    start = i + 1;
+                }
+            }
+        }
+
+        /** Return the percentage similarity of this file and OTHER. */
+        int similarity(Signature other) {
+            long larger = Math.max(_size, other._size);
+            if (larger == 0) {
+                return 100;
+            }
+            long smaller = Math.min(_size, other._size);
+            if (smaller * 100 < larger * MIN_SIMILARITY) {
+                return 0;
+            }
+            long common = 0;
+            for (Map.Entry<Integer, Integer> e : _bytes.entrySet()) {
+                Integer n = other._bytes.get(e.getKey());
+                if (n != null) {
+                    common += Math.min(n, e.getValue());
+                }
+            }
+            return (int) (common * 100 / larger);
+        }
+
+        /** Number of bytes in lines with each hash. */
+        private final HashMap<Integer, Integer> _bytes = new HashMap<>();
+        /** Size of the file in bytes. */
+        private final long _size;
+    }
+}
@@ -0,0 +1,44 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Renames. */
+public class RenamesTest {
+
+    /** Return the similarity of A and B. */
+    private static int similarity(String a, String b) {
+        return Renames.similarity(a.getBytes(), b.getBytes());
+    }
+
+    @Test
+    public void testIdentical() {
+        assertEquals(100, similarity("", ""));
+        assertEquals(100, similarity("a\nb\n", "a\nb\n"));
+        assertEquals(100, similarity("a\nb\n", "b\na\n"));
+    }
+
+    @Test
+    public void testPartial() {
+        assertEquals(75, similarity("aaa\nbbb\nccc\nddd\n",
+                                    "aaa\nbbb\nccc\neee\n"));
+        assertEquals(50, similarity("aaa\nbbb\n", "aaa\nbbb\nccc\nddd\n"));
+        assertEquals(0, similarity("aaa\nbbb\n", "ccc\nddd\n"));
+    }
+
+    @Test
+    public void testRepeatedLines() {
+        assertEquals(50, similarity("x\nx\nx\nx\n", "x\nx\ny\ny\n"));
+    }
+
+    @Test
+    public void testSizeMismatch() {
+        assertEquals(0, similarity("aaa\n", "aaa\nbbb\nccc\n"));
+    }
+
+    @Test
+    public void testLastLine() {
+        assertEquals(100, similarity("aaa\nbbb", "aaa\nbbb"));
+        assertEquals(50, similarity("aaa\nbbb", "aaa\nbbb\n"));
+    }
+}
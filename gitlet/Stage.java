@@ -1,10 +1,23 @@
 package gitlet;
 
-import java.io.Serializable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Set;
 
-public class Stage implements Serializable {
+import static gitlet.Utils.*;
+
+public class Stage {
+    /**File in which the stage is saved.*/
+    static final File STAGE_FILE = join(Command.STAGE_DIR, "stage.txt");
+    /**Magic number at the start of an encoded stage.*/
+    static final int MAGIC = 0x4753;
+    /**Current stage format version.*/
+    static final int VERSION = 1;
     /**HashMap of staged added blob files with fileNames keys.*/
     private HashMap<String, String> addHash;
     /**HashMap of staged deleted blob files with fileNames keys.*/
@@ -18,6 +31,52 @@ public class Stage implements Serializable {
         this.nonCategorizedHash = new HashMap<>();
     }
 
+    /*read the saved stage, converting it from the old serialized
+     * format if necessary.*/
+    public static Stage load() {
+        byte[] contents = readContents(STAGE_FILE);
+        if (Migration.isLegacy(contents)) {
+            return Migration.legacyStage(contents);
+        }
+        Stage stage = new Stage();
+        DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(contents));
+        try {
+            if (in.readUnsignedShort() != MAGIC
+                    || in.readUnsignedByte() != VERSION) {
+                throw error("Unknown stage format.");
+            }
+            stage.addHash = readIdMap(in);
+            stage.deleteHash = readIdMap(in);
+            stage.nonCategorizedHash = readIdMap(in);
+        } catch (IOException excp) {
+            throw error("Corrupt stage.");
+        }
+        return stage;
+    }
+
+    /*write this stage to STAGE_FILE.*/
+    public void save() {
+        writeContents(STAGE_FILE, encode());
+    }
+
+    /*return the binary encoding of this stage.*/
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(MAGIC);
+            out.writeByte(VERSION);
+            writeIdMap(out, addHash);
+            writeIdMap(out, deleteHash);
+            writeIdMap(out, nonCategorizedHash);
+            out.close();
+        } catch (IOException excp) {
+            throw error("Internal error serializing stage.");
+        }
+        return bytes.toByteArray();
+    }
+
     public HashMap<String, String> getAdd() {
         return this.addHash;
     }
@@ -45,7 +104,7 @@ public class Stage implements Serializable {
         return getDelete().keySet();
     }
 
-    public HashMap getNonCategorized() {
+    public HashMap<String, String> getNonCategorized() {
         return this.nonCategorizedHash;
     }
 
@@ -0,0 +1,130 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** A diff3-style merge of two versions of a file that descend from a
+ *  common base.  Each version is diffed against the base, and the edits
+ *  of the two are grouped into chunks of the base: edits that overlap or
+ *  touch fall in the same chunk.  Outside the chunks the base is kept.  A
+ *  chunk changed by one version only takes that version's lines, as does
+ *  a chunk changed identically by both; any other chunk is a conflict,
+ *  and gets both versions' lines between conflict markers.  As in Git's
+ *  "zealous" merge, lines that begin or end both versions of a
+ *  conflicting chunk are kept outside its markers. */
+class ThreeWayMerge {
+
+    /** Line opening our version of a conflict. */
+    static final String OURS_MARKER = "<<<<<<< HEAD";
+    /** Line separating the two versions of a conflict. */
+    static final String SEPARATOR = "=======";
+    /** Line closing their version of a conflict. */
+    static final String THEIRS_MARKER = ">>>>>>>";
+
+    /** The merge of OURS and THEIRS, both descended from BASE, whose
+     *  differences from BASE are found by ALGORITHM. */
+    ThreeWayMerge(List<String> base, List<String> ours, List<String> theirs,
+                  Diff.Algorithm algorithm) {
+        int[] edits1 = edits(base, ours, algorithm);
+        int[] edits2 = edits(base, theirs, algorithm);
+        int i1 = 0, i2 = 0;
+        int kept = 0;
+        int offset1 = 0, offset2 = 0;
+        while (i1 < edits1.length || i2 < edits2.length) {
+            int start = Math.min(
+                i1 < edits1.length ? edits1[i1] : Integer.MAX_VALUE,
+                i2 < edits2.length ? edits2[i2] : Integer.MAX_VALUE);
+            int end = start;
+            int first1 = i1, first2 = i2;
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                if (i1 < edits1.length && edits1[i1] <= end) {
+                    end = Math.max(end, edits1[i1] + edits1[i1 + 1]);
+                    i1 += 4;
+                    grown = true;
+                }
+                if (i2 < edits2.length && edits2[i2] <= end) {
+                    end = Math.max(end, edits2[i2] + edits2[i2 + 1]);
+                    i2 += 4;
+                    grown = true;
+                }
+            }
+            _result.addAll(base.subList(kept, start));
+            int s1 = start + offset1, s2 = start + offset2;
+            offset1 = shift(edits1, first1, i1, offset1);
+            offset2 = shift(edits2, first2, i2, offset2);
+            chunk(ours.subList(s1, end + offset1), first1 < i1,
+                  theirs.subList(s2, end + offset2), first2 < i2);
+            kept = end;
+        }
+        _result.addAll(base.subList(kept, base.size()));
+    }
+
+    /** Return the merged lines, including any conflict markers. */
+    List<String> result() {
+        return _result;
+    }
+
+    /** Return the number of conflicts. */
+    int conflicts() {
+        return _conflicts;
+    }
+
+    /** Append the merge of one chunk of the base, whose lines in our
+     *  version are LINES1 and in theirs LINES2, to the result.  CHANGED1
+     *  and CHANGED2 are true iff we and they, respectively, edited it. */
+    private void chunk(List<String> lines1, boolean changed1,
+                       List<String> lines2, boolean changed2) {
+        if (!changed2 || lines1.equals(lines2)) {
+            _result.addAll(lines1);
+        } else if (!changed1) {
+            _result.addAll(lines2);
+        } else {
+            int n1 = lines1.size(), n2 = lines2.size();
+            int prefix = 0;
+            while (prefix < n1 && prefix < n2
+                   && lines1.get(prefix).equals(lines2.get(prefix))) {
+                prefix += 1;
+            }
+            int suffix = 0;
+            while (suffix < n1 - prefix && suffix < n2 - prefix
+                   && lines1.get(n1 - suffix - 1)
+                      .equals(lines2.get(n2 - suffix - 1))) {
+                suffix += 1;
+            }
+            _result.addAll(lines1.subList(0, prefix));
+            _result.add(OURS_MARKER);
+            _result.addAll(lines1.subList(prefix, n1 - suffix));
+            _result.add(SEPARATOR);
+            _result.addAll(lines2.subList(prefix, n2 - suffix));
+            _result.add(THEIRS_MARKER);
+            _result.addAll(lines1.subList(n1 - suffix, n1));
+            _conflicts += 1;
+        }
+    }
+
+    /** Return OFFSET, the difference between the positions of
+     *  corresponding lines of a version and the base before EDITS[FROM],
+     *  adjusted for the edits EDITS[FROM .. TO - 1]. */
+    private static int shift(int[] edits, int from, int to, int offset) {
+        for (int i = from; i < to; i += 4) {
+            offset += edits[i + 3] - edits[i + 1];
+        }
+        return offset;
+    }
+
+    /** Return the edits converting BASE to VERSION, in the form returned
+     *  by Diff.diffs(), as found by ALGORITHM. */
+    private static int[] edits(List<String> base, List<String> version,
+                               Diff.Algorithm algorithm) {
+        Diff diff = new Diff(algorithm);
+        diff.setSequences(base, version);
+        return diff.diffs();
+    }
+
+    /** The merged lines. */
+    private final List<String> _result = new ArrayList<>();
+    /** Number of conflicting chunks. */
+    private int _conflicts;
+}
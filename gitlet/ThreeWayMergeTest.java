@@ -0,0 +1,94 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of ThreeWayMerge. */
+public class ThreeWayMergeTest {
+
+    /** Return the lines of TEXT, one per character. */
+    private static List<String> lines(String text) {
+        return Arrays.asList(text.split(""));
+    }
+
+    /** Return the merge of OURS and THEIRS from BASE, each given as one
+     *  character per line. */
+    private static ThreeWayMerge merge(String base, String ours,
+                                       String theirs) {
+        return new ThreeWayMerge(lines(base), lines(ours), lines(theirs),
+                                 Diff.Algorithm.MYERS);
+    }
+
+    /** Check that merging OURS and THEIRS from BASE gives EXPECTED without
+     *  conflicts. */
+    private static void checkClean(String base, String ours, String theirs,
+                                   String expected) {
+        ThreeWayMerge merge = merge(base, ours, theirs);
+        assertEquals(0, merge.conflicts());
+        assertEquals(lines(expected), merge.result());
+    }
+
+    @Test
+    public void testOneSide() {
+        checkClean("abcdef", "abcdef", "abXdef", "abXdef");
+        checkClean("abcdef", "abXdef", "abcdef", "abXdef");
+        checkClean("abcdef", "abcdef", "abcdef", "abcdef");
+    }
+
+    @Test
+    public void testSeparateEdits() {
+        checkClean("abcdefgh", "Xbcdefgh", "abcdefgY", "XbcdefgY");
+        checkClean("abcdefgh", "abdefgh", "abcdeZZfgh", "abdeZZfgh");
+        checkClean("abcdefgh", "abcdefghI", "Jabcdefgh", "JabcdefghI");
+    }
+
+    @Test
+    public void testSameEdit() {
+        checkClean("abcdef", "abXdef", "abXdef", "abXdef");
+        checkClean("abcdef", "abdef", "abdef", "abdef");
+    }
+
+    @Test
+    public void testConflict() {
+        ThreeWayMerge merge = merge("abcdef", "abXdef", "abYdef");
+        assertEquals(1, merge.conflicts());
+        assertEquals(Arrays.asList("a", "b", ThreeWayMerge.OURS_MARKER, "X",
+                                   ThreeWayMerge.SEPARATOR, "Y",
+                                   ThreeWayMerge.THEIRS_MARKER, "d", "e",
+                                   "f"),
+                     merge.result());
+    }
+
+    @Test
+    public void testConflictKeepsCommonEnds() {
+        ThreeWayMerge merge = merge("abcdef", "abPXQdef", "abPYQdef");
+        assertEquals(1, merge.conflicts());
+        assertEquals(Arrays.asList("a", "b", "P", ThreeWayMerge.OURS_MARKER,
+                                   "X", ThreeWayMerge.SEPARATOR, "Y",
+                                   ThreeWayMerge.THEIRS_MARKER, "Q", "d",
+                                   "e", "f"),
+                     merge.result());
+    }
+
+    @Test
+    public void testTwoConflicts() {
+        ThreeWayMerge merge = merge("abcdefgh", "Xbcdefgh", "Ybcdefgh");
+        assertEquals(1, merge.conflicts());
+        merge = merge("abcdefgh", "XbcdefgZ", "YbcdefgW");
+        assertEquals(2, merge.conflicts());
+    }
+
+    @Test
+    public void testDeleteAgainstEdit() {
+        ThreeWayMerge merge = merge("abcdef", "abdef", "abXdef");
+        assertEquals(1, merge.conflicts());
+        assertEquals(Arrays.asList("a", "b", ThreeWayMerge.OURS_MARKER,
+                                   ThreeWayMerge.SEPARATOR, "X",
+                                   ThreeWayMerge.THEIRS_MARKER, "d", "e",
+                                   "f"),
+                     merge.result());
+    }
+}
@@ -0,0 +1,306 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** Content-addressed trees recording the files of a commit.  A commit
+ *  holds only the id of its root tree, and trees are stored once in the
+ *  object store and shared by every commit that has them.
+ *
+ *  Gitlet tracks a single flat directory, so rather than one tree per
+ *  subdirectory, a tree with more than LEAF_MAX entries is split into up
+ *  to 256 subtrees, choosing each file's subtree by the first byte of the
+ *  SHA-1 hash of its name.  A leaf tree lists file names and blob ids; a
+ *  split tree lists its non-empty subtrees.  Which form a tree takes
+ *  depends only on its contents, so equal file maps always have equal
+ *  tree ids.  A commit that changes a few files writes a new root and new
+ *  copies of only the subtrees holding those files, and comparisons skip
+ *  every subtree whose id is the same on both sides. */
+class Tree {
+
+    /** Magic number at the start of every encoded tree. */
+    static final int MAGIC = 0x4754;
+    /** Current tree format version. */
+    static final int VERSION = 1;
+    /** Largest number of entries kept in a single leaf tree. */
+    static final int LEAF_MAX = 256;
+    /** Number of subtrees of a split tree. */
+    private static final int BUCKETS = 256;
+
+    /** A tree whose files are given by ENTRIES, if it is a leaf, or whose
+     *  subtrees are SUBTREES, if it is split, holding SIZE files in
+     *  all. */
+    private Tree(HashMap<String, String> entries,
+                 TreeMap<Integer, String> subtrees, int size) {
+        _entries = entries;
+        _subtrees = subtrees;
+        _size = size;
+    }
+
+    /** Store a tree holding FILES, a map from file names to blob ids, and
+     *  return its id. */
+    static String write(Map<String, String> files) {
+        if (files.size() <= LEAF_MAX) {
+            return store(new Tree(new HashMap<>(files), null, files.size()));
+        }
+        TreeMap<Integer, HashMap<String, String>> buckets = new TreeMap<>();
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            buckets.computeIfAbsent(bucket(e.getKey()),
+                    k -> new HashMap<>()).put(e.getKey(), e.getValue());
+        }
+        TreeMap<Integer, String> subtrees = new TreeMap<>();
+        for (Map.Entry<Integer, HashMap<String, String>> e
+                 : buckets.entrySet()) {
+            subtrees.put(e.getKey(),
+                    store(new Tree(e.getValue(), null, e.getValue().size())));
+        }
+        return store(new Tree(null, subtrees, files.size()));
+    }
+
+    /** Return the id of the tree obtained from the tree with id ROOT by
+     *  setting the files in ADDED, a map from file names to blob ids, and
+     *  removing those in REMOVED.  Only the subtrees holding changed files
+     *  are rewritten. */
+    static String update(String root, Map<String, String> added,
+                         Set<String> removed) {
+        Tree tree = load(root);
+        if (tree._subtrees == null) {
+            HashMap<String, String> files = new HashMap<>(tree._entries);
+            files.putAll(added);
+            files.keySet().removeAll(removed);
+            return write(files);
+        }
+        TreeSet<Integer> touched = new TreeSet<>();
+        for (String name : added.keySet()) {
+            touched.add(bucket(name));
+        }
+        for (String name : removed) {
+            touched.add(bucket(name));
+        }
+        TreeMap<Integer, String> subtrees = new TreeMap<>(tree._subtrees);
+        TreeMap<Integer, HashMap<String, String>> changed = new TreeMap<>();
+        int size = tree._size;
+        for (int b : touched) {
+            HashMap<String, String> files = new HashMap<>();
+            if (subtrees.containsKey(b)) {
+                files.putAll(load(subtrees.get(b))._entries);
+            }
+            size -= files.size();
+            for (Map.Entry<String, String> e : added.entrySet()) {
+                if (bucket(e.getKey()) == b) {
+                    files.put(e.getKey(), e.getValue());
+                }
+            }
+            files.keySet().removeAll(removed);
+            size += files.size();
+            changed.put(b, files);
+        }
+        if (size <= LEAF_MAX) {
+            HashMap<String, String> files = new HashMap<>();
+            for (Map.Entry<Integer, String> e : subtrees.entrySet()) {
+                if (!changed.containsKey(e.getKey())) {
+                    files.putAll(load(e.getValue())._entries);
+                }
+            }
+            for (HashMap<String, String> bucketFiles : changed.values()) {
+                files.putAll(bucketFiles);
+            }
+            return write(files);
+        }
+        for (Map.Entry<Integer, HashMap<String, String>> e
+                 : changed.entrySet()) {
+            if (e.getValue().isEmpty()) {
+                subtrees.remove(e.getKey());
+            } else {
+                subtrees.put(e.getKey(), store(new Tree(e.getValue(), null,
+                        e.getValue().size())));
+            }
+        }
+        return store(new Tree(null, subtrees, size));
+    }
+
+    /** Return a new map from file names to blob ids of all files in the
+     *  tree with id ROOT. */
+    static HashMap<String, String> read(String root) {
+        Tree tree = load(root);
+        if (tree._subtrees == null) {
+            return new HashMap<>(tree._entries);
+        }
+        HashMap<String, String> result = new HashMap<>();
+        for (String subtree : tree._subtrees.values()) {
+            result.putAll(load(subtree)._entries);
+        }
+        return result;
+    }
+
+    /** Return the blob id of file NAME in the tree with id ROOT, or null if
+     *  it has no such file. */
+    static String lookup(String root, String name) {
+        Tree tree = load(root);
+        if (tree._subtrees == null) {
+            return tree._entries.get(name);
+        }
+        String subtree = tree._subtrees.get(bucket(name));
+        return subtree == null ? null : load(subtree)._entries.get(name);
+    }
+
+    /** Add ROOT, a tree id, and the ids of its subtrees to TREES, and the
+     *  blob ids of its files to BLOBS, unless ROOT is already in TREES.
+     *  TREES and BLOBS may be shared by several threads. */
+    static void collect(String root, Set<String> trees, Set<String> blobs) {
+        if (!trees.add(root)) {
+            return;
+        }
+        Tree tree = load(root);
+        if (tree._subtrees == null) {
+            blobs.addAll(tree._entries.values());
+            return;
+        }
+        for (String subtree : tree._subtrees.values()) {
+            collect(subtree, trees, blobs);
+        }
+    }
+
+    /** A file whose blob id differs between two trees. */
+    static class Change {
+        /** A change to file PATH from blob BEFORE to blob AFTER, either of
+         *  which is null if the file is absent. */
+        Change(String path, String before, String after) {
+            this.path = path;
+            this.before = before;
+            this.after = after;
+        }
+
+        /** The file name. */
+        final String path;
+        /** The blob id in the first tree, or null. */
+        final String before;
+        /** The blob id in the second tree, or null. */
+        final String after;
+    }
+
+    /** Return the files that differ between the trees with ids FROM and
+     *  TO, sorted by name.  Subtrees with the same id on both sides are
+     *  skipped without being read. */
+    static List<Change> diff(String from, String to) {
+        List<Change> result = new ArrayList<>();
+        if (from.equals(to)) {
+            return result;
+        }
+        Tree a = load(from), b = load(to);
+        TreeMap<String, String> before = new TreeMap<>();
+        TreeMap<String, String> after = new TreeMap<>();
+        if (a._subtrees != null && b._subtrees != null) {
+            TreeSet<Integer> buckets = new TreeSet<>(a._subtrees.keySet());
+            buckets.addAll(b._subtrees.keySet());
+            for (int k : buckets) {
+                String x = a._subtrees.get(k), y = b._subtrees.get(k);
+                if (x != null && x.equals(y)) {
+                    continue;
+                }
+                if (x != null) {
+                    before.putAll(load(x)._entries);
+                }
+                if (y != null) {
+                    after.putAll(load(y)._entries);
+                }
+            }
+        } else {
+            before.putAll(read(from));
+            after.putAll(read(to));
+        }
+        TreeSet<String> paths = new TreeSet<>(before.keySet());
+        paths.addAll(after.keySet());
+        for (String path : paths) {
+            String x = before.get(path), y = after.get(path);
+            if (x == null || !x.equals(y)) {
+                result.add(new Change(path, x, y));
+            }
+        }
+        return result;
+    }
+
+    /** Return the subtree number of file NAME. */
+    private static int bucket(String name) {
+        return Integer.parseInt(sha1(name).substring(0, 2), 16);
+    }
+
+    /** Store TREE, returning its id. */
+    private static String store(Tree tree) {
+        byte[] contents = tree.encode();
+        String id = sha1(contents);
+        ObjectStore.write(ObjectStore.Kind.TREE, id, contents);
+        return id;
+    }
+
+    /** Return the tree with id ID. */
+    private static Tree load(String id) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                ObjectStore.read(ObjectStore.Kind.TREE, id)));
+        try {
+            if (in.readUnsignedShort() != MAGIC
+                || in.readUnsignedByte() != VERSION) {
+                throw error("Unknown tree format: %s", id);
+            }
+            if (in.readBoolean()) {
+                int size = in.readInt();
+                int n = in.readUnsignedShort();
+                TreeMap<Integer, String> subtrees = new TreeMap<>();
+                for (int i = 0; i < n; i += 1) {
+                    int b = in.readUnsignedByte();
+                    subtrees.put(b, readId(in));
+                }
+                return new Tree(null, subtrees, size);
+            }
+            HashMap<String, String> entries = readIdMap(in);
+            return new Tree(entries, null, entries.size());
+        } catch (IOException excp) {
+            throw error("Corrupt tree: %s", id);
+        }
+    }
+
+    /** Return the binary encoding of this tree. */
+    private byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(MAGIC);
+            out.writeByte(VERSION);
+            out.writeBoolean(_subtrees != null);
+            if (_subtrees != null) {
+                out.writeInt(_size);
+                out.writeShort(_subtrees.size());
+                for (Map.Entry<Integer, String> e : _subtrees.entrySet()) {
+                    out.writeByte(e.getKey());
+                    writeId(out, e.getValue());
+                }
+            } else {
+                writeIdMap(out, _entries);
+            }
+            out.close();
+        } catch (IOException excp) {
+            throw error("Internal error serializing tree.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Files of a leaf tree, or null if this tree is split. */
+    private final HashMap<String, String> _entries;
+    /** Subtree ids of a split tree by subtree number, or null if this is a
+     *  leaf. */
+    private final TreeMap<Integer, String> _subtrees;
+    /** Total number of files in this tree. */
+    private final int _size;
+}
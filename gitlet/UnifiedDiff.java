@@ -0,0 +1,205 @@
+package gitlet;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static gitlet.Utils.*;
+
+/** A writer of differences between files in unified diff format.  Each
+ *  changed file gets a "diff --git" header and its hunks, each hunk
+ *  showing up to CONTEXT unchanged lines on either side of its changes;
+ *  changes separated by no more than twice that many unchanged lines are
+ *  shown in one hunk.  A renamed file gets Git's similarity and rename
+ *  lines after its header, and a binary file a single "Binary files
+ *  differ" line in place of hunks.  Files are compared in parallel, a
+ *  batch at a time, but their diffs are written in the order given.
+ *  Output is buffered, and is complete only after flush(). */
+class UnifiedDiff {
+
+    /** Size of the output buffer, in chars. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Name used for a missing file. */
+    private static final String NO_FILE = "/dev/null";
+    /** Number of files compared together before their diffs are
+     *  written. */
+    private static final int BATCH = 64;
+
+    /** Lines standing for the contents of a binary or very large file,
+     *  which are reported as differing rather than compared. */
+    static final List<String> BINARY = Collections.unmodifiableList(
+        new ArrayList<>());
+
+    /** A file to compare: its name and contents on each side, the
+     *  contents being read only when the file is compared. */
+    static class FilePair {
+        /** A comparison of file NAME1, with contents LINES1, and NAME2,
+         *  with contents LINES2.  Either supplier may return null for a
+         *  missing file.  If SIMILARITY is not negative, NAME2 is NAME1
+         *  renamed, and their contents are SIMILARITY percent alike. */
+        FilePair(String name1, Supplier<List<String>> lines1,
+                 String name2, Supplier<List<String>> lines2,
+                 int similarity) {
+            this.name1 = name1;
+            this.lines1 = lines1;
+            this.name2 = name2;
+            this.lines2 = lines2;
+            this.similarity = similarity;
+        }
+
+        /** A comparison of file NAME, with contents LINES1, and the same
+         *  file with contents LINES2. */
+        FilePair(String name, Supplier<List<String>> lines1,
+                 Supplier<List<String>> lines2) {
+            this(name, lines1, name, lines2, -1);
+        }
+
+        /** The file names. */
+        final String name1, name2;
+        /** The file contents. */
+        final Supplier<List<String>> lines1, lines2;
+        /** The percentage similarity of a rename, else -1. */
+        final int similarity;
+    }
+
+    /** A writer of diffs to OUT, found by ALGORITHM and showing CONTEXT
+     *  lines of context around each change. */
+    UnifiedDiff(OutputStream out, int context, Diff.Algorithm algorithm) {
+        _out = new BufferedWriter(
+            new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        _context = Math.max(0, context);
+        _algorithm = algorithm;
+    }
+
+    /** Write the differences within each of PAIRS, in order, comparing
+     *  the files of each batch in parallel. */
+    void files(List<FilePair> pairs) {
+        for (int start = 0; start < pairs.size(); start += BATCH) {
+            int first = start;
+            StringBuilder[] text =
+                new StringBuilder[Math.min(BATCH, pairs.size() - start)];
+            Parallel.forEach(text.length, i -> {
+                text[i] = new StringBuilder();
+                format(pairs.get(first + i), text[i]);
+            });
+            for (StringBuilder diff : text) {
+                try {
+                    _out.append(diff);
+                } catch (IOException excp) {
+                    throw error("Could not write diff: %s",
+                                excp.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Append the differences within PAIR, if any, to OUT. */
+    private void format(FilePair pair, StringBuilder out) {
+        List<String> lines1 = pair.lines1.get(), lines2 = pair.lines2.get();
+        String a = lines1 == null ? NO_FILE : "a/" + pair.name1;
+        String b = lines2 == null ? NO_FILE : "b/" + pair.name2;
+        if (lines1 == BINARY || lines2 == BINARY) {
+            header(pair, a, b, out);
+            if (pair.similarity != 100) {
+                line(out, "Binary files " + a + " and " + b + " differ");
+            }
+            return;
+        }
+        Diff diff = new Diff(_algorithm);
+        diff.setSequences(lines1 == null ? Collections.emptyList() : lines1,
+                          lines2 == null ? Collections.emptyList() : lines2);
+        boolean same = lines1 != null && lines2 != null
+            && diff.sequencesEqual();
+        if (same && pair.similarity < 0) {
+            return;
+        }
+        header(pair, a, b, out);
+        if (same) {
+            return;
+        }
+        line(out, "--- " + a);
+        line(out, "+++ " + b);
+        int[] edits = diff.diffs();
+        int n1 = diff.sequence1().size(), n2 = diff.sequence2().size();
+        for (int first = 0; first < edits.length; ) {
+            int last = first;
+            while (last + 4 < edits.length
+                   && edits[last + 4] - (edits[last] + edits[last + 1])
+                      <= 2 * _context) {
+                last += 4;
+            }
+            int start1 = Math.max(0, edits[first] - _context);
+            int start2 = Math.max(0, edits[first + 2] - _context);
+            int end1 = Math.min(n1, edits[last] + edits[last + 1] + _context);
+            int end2 = Math.min(n2,
+                                edits[last + 2] + edits[last + 3] + _context);
+            line(out, "@@ -" + range(start1, end1 - start1)
+                 + " +" + range(start2, end2 - start2) + " @@");
+            int k1 = start1;
+            for (int e = first; e <= last; e += 4) {
+                for (; k1 < edits[e]; k1 += 1) {
+                    line(out, " " + diff.get1(k1));
+                }
+                for (; k1 < edits[e] + edits[e + 1]; k1 += 1) {
+                    line(out, "-" + diff.get1(k1));
+                }
+                for (int k2 = edits[e + 2]; k2 < edits[e + 2] + edits[e + 3];
+                     k2 += 1) {
+                    line(out, "+" + diff.get2(k2));
+                }
+            }
+            for (; k1 < end1; k1 += 1) {
+                line(out, " " + diff.get1(k1));
+            }
+            first = last + 4;
+        }
+    }
+
+    /** Append to OUT the "diff --git" line for PAIR, whose files are
+     *  called A and B, followed by its rename lines if it is a rename. */
+    private static void header(FilePair pair, String a, String b,
+                               StringBuilder out) {
+        line(out, "diff --git " + a + " " + b);
+        if (pair.similarity >= 0) {
+            line(out, "similarity index " + pair.similarity + "%");
+            line(out, "rename from " + pair.name1);
+            line(out, "rename to " + pair.name2);
+        }
+    }
+
+    /** Write out everything buffered so far. */
+    void flush() {
+        try {
+            _out.flush();
+        } catch (IOException excp) {
+            throw error("Could not write diff: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the range of a hunk in unified diff format for the LEN lines
+     *  starting at line START (0-based): the 1-based number of its first
+     *  line, or of the line before it if it is empty, followed by a comma
+     *  and LEN unless LEN is 1. */
+    private static String range(int start, int len) {
+        String result = Integer.toString(len == 0 ? start : start + 1);
+        return len == 1 ? result : result + "," + len;
+    }
+
+    /** Append TEXT and a line terminator to OUT. */
+    private static void line(StringBuilder out, String text) {
+        out.append(text).append(System.lineSeparator());
+    }
+
+    /** Where the diffs are written. */
+    private final BufferedWriter _out;
+    /** Number of unchanged lines shown on either side of a change. */
+    private final int _context;
+    /** The algorithm used to find the differences. */
+    private final Diff.Algorithm _algorithm;
+}
@@ -12,7 +12,11 @@ public class UnitTest {
     /** Run the JUnit tests in the loa package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        System.exit(textui.runClasses(UnitTest.class));
+        System.exit(textui.runClasses(UnitTest.class, LzStreamTest.class,
+                                      ParallelTest.class, DeltaTest.class,
+                                      BitmapTest.class, DiffTest.class,
+                                      RenamesTest.class,
+                                      ThreeWayMergeTest.class));
     }
 
     /** A dummy test to avoid complaint. */
@@ -4,10 +4,13 @@ package gitlet;
 
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
@@ -17,8 +20,10 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 
 /** Assorted utilities.
@@ -34,27 +39,60 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
+        MessageDigest md = newSha1();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        }
+        return toHex(md.digest());
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE, read in blocks of
+     *  BUFFER_SIZE bytes so that FILE need not fit in memory. */
+    static String fileSha1(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            MessageDigest md = newSha1();
+            byte[] buf = new byte[BUFFER_SIZE];
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                md.update(buf, 0, n);
             }
-            return result.toString();
+            return toHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a new SHA-1 MessageDigest. */
+    static MessageDigest newSha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Returns the lower-case hexadecimal numeral for the bytes of
+     *  DIGEST. */
+    static String toHex(byte[] digest) {
+        char[] result = new char[2 * digest.length];
+        for (int i = 0; i < digest.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Hexadecimal digits, indexed by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Size of the blocks in which large files are read and written. */
+    static final int BUFFER_SIZE = 1 << 16;
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -218,6 +256,64 @@ class Utils {
         }
     }
 
+    /* BINARY ENCODING UTILITIES */
+
+    /** Write S to OUT as a length-prefixed UTF-8 string. */
+    static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Return a string written by writeString from IN. */
+    static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Write the hexadecimal SHA-1 id ID to OUT as 20 raw bytes. */
+    static void writeId(DataOutput out, String id) throws IOException {
+        for (int i = 0; i < UID_LENGTH; i += 2) {
+            out.writeByte(Character.digit(id.charAt(i), 16) << 4
+                          | Character.digit(id.charAt(i + 1), 16));
+        }
+    }
+
+    /** Return the hexadecimal form of a raw id written by writeId from
+     *  IN. */
+    static String readId(DataInput in) throws IOException {
+        StringBuilder result = new StringBuilder(UID_LENGTH);
+        for (int i = 0; i < UID_LENGTH / 2; i += 1) {
+            int b = in.readUnsignedByte();
+            result.append(Character.forDigit(b >> 4, 16));
+            result.append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    /** Write the entries of MAP to OUT in key order, each as a string key
+     *  and a raw SHA-1 id value. */
+    static void writeIdMap(DataOutput out, Map<String, String> map)
+        throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> e : new TreeMap<>(map).entrySet()) {
+            writeString(out, e.getKey());
+            writeId(out, e.getValue());
+        }
+    }
+
+    /** Return a map written by writeIdMap from IN. */
+    static HashMap<String, String> readIdMap(DataInput in)
+        throws IOException {
+        int n = in.readInt();
+        HashMap<String, String> result = new HashMap<>();
+        for (int i = 0; i < n; i += 1) {
+            String key = readString(in);
+            result.put(key, readId(in));
+        }
+        return result;
+    }
 
 
     /* MESSAGES AND ERROR REPORTING */